@@ -0,0 +1,766 @@
+package smartcity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+public final class CityDataFile {
+    static final int MAGIC = 0x53434442;
+    static final short VERSION = 3;
+
+    static final byte TRANSPORT = 1;
+    static final byte POWER = 2;
+    static final byte EMERGENCY = 3;
+    static final byte ID_INDEX = 4;
+    static final byte WITH_COORDINATES = 0x40;
+
+    private static final byte PLAIN = 0;
+    private static final byte DICTIONARY = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int SECTION_HEADER_SIZE = 13;
+
+    private CityDataFile() {
+    }
+
+    public static boolean isCityDataFile(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    break;
+                }
+            }
+            magic.flip();
+            return magic.remaining() == 4 && magic.getInt() == MAGIC;
+        }
+    }
+
+    public static void write(String filename, Collection<? extends CityResource> resources) throws IOException {
+        write(filename, resources, null);
+    }
+
+    public static void write(String filename, Collection<? extends CityResource> resources,
+            ProgressListener progress) throws IOException {
+        writeFrozen(filename, freeze(resources), progress);
+    }
+
+    static List<CityResource> freeze(Collection<? extends CityResource> resources) throws IOException {
+        ArrayList<CityResource> copies = new ArrayList<>(resources.size());
+        for (CityResource live : resources) {
+            copies.add(copyOf(live));
+        }
+        return copies;
+    }
+
+    static void writeFrozen(String filename, List<CityResource> resources, ProgressListener progress)
+            throws IOException {
+        ArrayList<TransportUnit> transportUnits = new ArrayList<>();
+        ArrayList<PowerStation> powerStations = new ArrayList<>();
+        ArrayList<EmergencyService> emergencyServices = new ArrayList<>();
+        for (CityResource resource : resources) {
+            if (resource instanceof TransportUnit) {
+                transportUnits.add((TransportUnit) resource);
+            } else if (resource instanceof PowerStation) {
+                powerStations.add((PowerStation) resource);
+            } else if (resource instanceof EmergencyService) {
+                emergencyServices.add((EmergencyService) resource);
+            }
+        }
+
+        Path target = Paths.get(filename);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 4).flip();
+            writeFully(channel, header);
+            long total = transportUnits.size() + powerStations.size() + emergencyServices.size();
+            writeSection(channel, TRANSPORT, transportUnits.size(), transportColumns(transportUnits));
+            reportProgress(progress, transportUnits.size(), total);
+            writeSection(channel, POWER, powerStations.size(), powerColumns(powerStations));
+            reportProgress(progress, transportUnits.size() + powerStations.size(), total);
+            writeSection(channel, EMERGENCY, emergencyServices.size(), emergencyColumns(emergencyServices));
+            ArrayList<CityResource> ordered = new ArrayList<>(transportUnits);
+            ordered.addAll(powerStations);
+            ordered.addAll(emergencyServices);
+            writeSection(channel, ID_INDEX, ordered.size(), List.of(idIndexColumn(ordered)));
+            channel.force(true);
+            reportProgress(progress, total, total);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void reportProgress(ProgressListener progress, long done, long total) {
+        if (progress != null) {
+            progress.progress(done, total);
+        }
+    }
+
+    public static ArrayList<CityResource> read(String filename) throws IOException {
+        ArrayList<CityResource> resources = new ArrayList<>();
+        for (Section section : open(filename).sections) {
+            for (int row = 0; row < section.rows; row++) {
+                resources.add(section.materialize(row));
+            }
+        }
+        return resources;
+    }
+
+    static void writeRecord(DataOutput out, CityResource resource) throws IOException {
+        synchronized (resource) {
+            if (resource instanceof TransportUnit) {
+                out.writeByte(TRANSPORT | WITH_COORDINATES);
+            } else if (resource instanceof PowerStation) {
+                out.writeByte(POWER | WITH_COORDINATES);
+            } else if (resource instanceof EmergencyService) {
+                out.writeByte(EMERGENCY | WITH_COORDINATES);
+            } else {
+                throw new IOException("Unsupported resource type: " + resource.getClass().getSimpleName());
+            }
+            out.writeUTF(resource.getResourceID());
+            out.writeUTF(resource.getLocation());
+            out.writeUTF(resource.getStatus().getLabel());
+            out.writeLong(resource.lastUpdated.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(resource.lastUpdated.getNano());
+            out.writeDouble(resource.getLatitude());
+            out.writeDouble(resource.getLongitude());
+            if (resource instanceof TransportUnit) {
+                TransportUnit unit = (TransportUnit) resource;
+                out.writeUTF(unit.getVehicleType());
+                out.writeInt(unit.getPassengerCapacity());
+                out.writeDouble(unit.getFuelConsumptionRate());
+                out.writeInt(unit.getCurrentPassengers());
+            } else if (resource instanceof PowerStation) {
+                PowerStation station = (PowerStation) resource;
+                out.writeUTF(station.getPowerType());
+                out.writeDouble(station.getEnergyOutput());
+                ArrayList<Consumer> consumers = station.getConnectedConsumers();
+                out.writeInt(consumers.size());
+                for (Consumer consumer : consumers) {
+                    out.writeUTF(consumer.getConsumerID());
+                    out.writeUTF(consumer.getType());
+                    out.writeDouble(consumer.getConsumption());
+                }
+            } else {
+                EmergencyService service = (EmergencyService) resource;
+                out.writeUTF(service.getServiceType());
+                out.writeInt(service.getResponseTime());
+                out.writeInt(service.getCallsHandled());
+            }
+        }
+    }
+
+    static byte[] encode(CityResource resource) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeRecord(out, resource);
+        }
+        return bytes.toByteArray();
+    }
+
+    static CityResource copyOf(CityResource resource) throws IOException {
+        return readRecord(new DataInputStream(new ByteArrayInputStream(encode(resource))));
+    }
+
+    static CityResource readRecord(DataInput in) throws IOException {
+        byte flags = in.readByte();
+        byte type = (byte) (flags & ~WITH_COORDINATES);
+        String id = in.readUTF();
+        String location = in.readUTF();
+        String status = in.readUTF();
+        LocalDateTime lastUpdated = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        boolean hasCoordinates = (flags & WITH_COORDINATES) != 0;
+        double latitude = hasCoordinates ? in.readDouble() : 0.0;
+        double longitude = hasCoordinates ? in.readDouble() : 0.0;
+        CityResource resource;
+        if (type == TRANSPORT) {
+            String vehicleType = in.readUTF();
+            int passengerCapacity = in.readInt();
+            double fuelConsumptionRate = in.readDouble();
+            int currentPassengers = in.readInt();
+            TransportUnit unit = new TransportUnit(id, location, status, vehicleType, passengerCapacity,
+                    fuelConsumptionRate);
+            unit.restoreCurrentPassengers(currentPassengers);
+            resource = unit;
+        } else if (type == POWER) {
+            String powerType = in.readUTF();
+            double energyOutput = in.readDouble();
+            int count = in.readInt();
+            ArrayList<Consumer> consumers = new ArrayList<>(count);
+            for (int c = 0; c < count; c++) {
+                consumers.add(new Consumer(in.readUTF(), in.readUTF(), in.readDouble()));
+            }
+            PowerStation station = new PowerStation(id, location, status, energyOutput, powerType);
+            station.getConnectedConsumers().addAll(consumers);
+            resource = station;
+        } else if (type == EMERGENCY) {
+            String serviceType = in.readUTF();
+            int responseTime = in.readInt();
+            int callsHandled = in.readInt();
+            resource = new EmergencyService(id, location, status, serviceType, responseTime, callsHandled);
+        } else {
+            throw new IOException("Unknown record type: " + type);
+        }
+        resource.lastUpdated = lastUpdated;
+        if (hasCoordinates) {
+            resource.latitude = latitude;
+            resource.longitude = longitude;
+        }
+        return resource;
+    }
+
+    static Contents open(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("City data file too large to map: " + filename);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return parse(data, filename);
+        }
+    }
+
+    private static Contents parse(ByteBuffer data, String filename) throws IOException {
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a city data file: " + filename);
+        }
+        short version = data.getShort(4);
+        if (version > VERSION) {
+            throw new IOException("Unsupported city data file version " + version + ": " + filename);
+        }
+        int sectionCount = data.getShort(6);
+        ArrayList<Section> sections = new ArrayList<>(sectionCount);
+        int idIndex = -1;
+        int pos = HEADER_SIZE;
+        for (int i = 0; i < sectionCount; i++) {
+            byte type = data.get(pos);
+            int rows = data.getInt(pos + 1);
+            long length = data.getLong(pos + 5);
+            ColumnReader columns = new ColumnReader(data, pos + SECTION_HEADER_SIZE, rows, version);
+            if (type == TRANSPORT) {
+                sections.add(new TransportSection(columns));
+            } else if (type == POWER) {
+                sections.add(new PowerSection(columns));
+            } else if (type == EMERGENCY) {
+                sections.add(new EmergencySection(columns));
+            } else if (type == ID_INDEX) {
+                idIndex = pos + SECTION_HEADER_SIZE;
+            }
+            pos = Math.toIntExact(pos + SECTION_HEADER_SIZE + length);
+        }
+        return new Contents(data, sections, idIndex);
+    }
+
+    static int idSlot(String resourceID, int mask) {
+        int h = resourceID.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    static int idTableSize(int rows) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, rows) * 2 - 1) << 1);
+    }
+
+    private static ByteBuffer idIndexColumn(List<? extends CityResource> rows) {
+        int tableSize = idTableSize(rows.size());
+        int mask = tableSize - 1;
+        int[] table = new int[tableSize];
+        for (int row = 0; row < rows.size(); row++) {
+            int slot = idSlot(rows.get(row).getResourceID(), mask);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = row + 1;
+        }
+        ByteBuffer column = ByteBuffer.allocate(4 + tableSize * 4);
+        column.putInt(tableSize);
+        for (int entry : table) {
+            column.putInt(entry);
+        }
+        return column.flip();
+    }
+
+    private static List<ByteBuffer> commonColumns(List<? extends CityResource> rows) {
+        ArrayList<ByteBuffer> columns = new ArrayList<>();
+        columns.add(stringColumn(rows.size(), i -> rows.get(i).getResourceID()));
+        columns.add(stringColumn(rows.size(), i -> rows.get(i).getLocation()));
+        columns.add(stringColumn(rows.size(), i -> rows.get(i).getStatus().getLabel()));
+        columns.add(longColumn(rows.size(), i -> rows.get(i).lastUpdated.toEpochSecond(ZoneOffset.UTC)));
+        columns.add(intColumn(rows.size(), i -> rows.get(i).lastUpdated.getNano()));
+        columns.add(doubleColumn(rows.size(), i -> rows.get(i).getLatitude()));
+        columns.add(doubleColumn(rows.size(), i -> rows.get(i).getLongitude()));
+        return columns;
+    }
+
+    private static List<ByteBuffer> transportColumns(List<TransportUnit> rows) {
+        List<ByteBuffer> columns = commonColumns(rows);
+        columns.add(stringColumn(rows.size(), i -> rows.get(i).getVehicleType()));
+        columns.add(intColumn(rows.size(), i -> rows.get(i).getPassengerCapacity()));
+        columns.add(doubleColumn(rows.size(), i -> rows.get(i).getFuelConsumptionRate()));
+        columns.add(intColumn(rows.size(), i -> rows.get(i).getCurrentPassengers()));
+        return columns;
+    }
+
+    private static List<ByteBuffer> powerColumns(List<PowerStation> rows) {
+        List<ByteBuffer> columns = commonColumns(rows);
+        columns.add(stringColumn(rows.size(), i -> rows.get(i).getPowerType()));
+        columns.add(doubleColumn(rows.size(), i -> rows.get(i).getEnergyOutput()));
+        ArrayList<Consumer> consumers = new ArrayList<>();
+        int[] consumerStart = new int[rows.size() + 1];
+        for (int i = 0; i < rows.size(); i++) {
+            consumerStart[i] = consumers.size();
+            consumers.addAll(rows.get(i).getConnectedConsumers());
+        }
+        consumerStart[rows.size()] = consumers.size();
+        columns.add(intColumn(rows.size() + 1, i -> consumerStart[i]));
+        columns.add(stringColumn(consumers.size(), i -> consumers.get(i).getConsumerID()));
+        columns.add(stringColumn(consumers.size(), i -> consumers.get(i).getType()));
+        columns.add(doubleColumn(consumers.size(), i -> consumers.get(i).getConsumption()));
+        return columns;
+    }
+
+    private static List<ByteBuffer> emergencyColumns(List<EmergencyService> rows) {
+        List<ByteBuffer> columns = commonColumns(rows);
+        columns.add(stringColumn(rows.size(), i -> rows.get(i).getServiceType()));
+        columns.add(intColumn(rows.size(), i -> rows.get(i).getResponseTime()));
+        columns.add(intColumn(rows.size(), i -> rows.get(i).getCallsHandled()));
+        return columns;
+    }
+
+    private static void writeSection(FileChannel channel, byte type, int rows, List<ByteBuffer> columns)
+            throws IOException {
+        long length = 0;
+        for (ByteBuffer column : columns) {
+            length += column.remaining();
+        }
+        ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_SIZE);
+        header.put(type).putInt(rows).putLong(length).flip();
+        writeFully(channel, header);
+        for (ByteBuffer column : columns) {
+            writeFully(channel, column);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer intColumn(int rows, IntUnaryOperator value) {
+        ByteBuffer column = ByteBuffer.allocate(rows * 4);
+        for (int i = 0; i < rows; i++) {
+            column.putInt(value.applyAsInt(i));
+        }
+        return column.flip();
+    }
+
+    private static ByteBuffer longColumn(int rows, IntToLongFunction value) {
+        ByteBuffer column = ByteBuffer.allocate(rows * 8);
+        for (int i = 0; i < rows; i++) {
+            column.putLong(value.applyAsLong(i));
+        }
+        return column.flip();
+    }
+
+    private static ByteBuffer doubleColumn(int rows, IntToDoubleFunction value) {
+        ByteBuffer column = ByteBuffer.allocate(rows * 8);
+        for (int i = 0; i < rows; i++) {
+            column.putDouble(value.applyAsDouble(i));
+        }
+        return column.flip();
+    }
+
+    private static ByteBuffer stringColumn(int rows, IntFunction<String> value) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] codes = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            String s = value.apply(i);
+            codes[i] = dictionary.computeIfAbsent(s == null ? "" : s, k -> dictionary.size());
+        }
+        if (dictionary.size() * 2 <= rows) {
+            String[] entries = dictionary.keySet().toArray(new String[0]);
+            ByteBuffer plain = plainStrings(entries.length, i -> entries[i]);
+            ByteBuffer column = ByteBuffer.allocate(1 + 4 + plain.remaining() + rows * 4);
+            column.put(DICTIONARY).putInt(entries.length).put(plain);
+            for (int code : codes) {
+                column.putInt(code);
+            }
+            return column.flip();
+        }
+        ByteBuffer plain = plainStrings(rows, value);
+        ByteBuffer column = ByteBuffer.allocate(1 + plain.remaining());
+        return column.put(PLAIN).put(plain).flip();
+    }
+
+    private static ByteBuffer plainStrings(int rows, IntFunction<String> value) {
+        byte[][] encoded = new byte[rows][];
+        int total = 0;
+        for (int i = 0; i < rows; i++) {
+            String s = value.apply(i);
+            encoded[i] = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+            total += encoded[i].length;
+        }
+        ByteBuffer column = ByteBuffer.allocate((rows + 1) * 4 + total);
+        int offset = 0;
+        for (int i = 0; i < rows; i++) {
+            column.putInt(offset);
+            offset += encoded[i].length;
+        }
+        column.putInt(offset);
+        for (byte[] bytes : encoded) {
+            column.put(bytes);
+        }
+        return column.flip();
+    }
+
+    private static final class ColumnReader {
+        private final ByteBuffer data;
+        private final int rows;
+        private final short version;
+        private int pos;
+
+        ColumnReader(ByteBuffer data, int pos, int rows, short version) {
+            this.data = data;
+            this.pos = pos;
+            this.rows = rows;
+            this.version = version;
+        }
+
+        int fixed(int width) {
+            return fixed(width, rows);
+        }
+
+        int fixed(int width, int count) {
+            int start = pos;
+            pos += width * count;
+            return start;
+        }
+
+        StringColumn strings() {
+            return strings(rows);
+        }
+
+        StringColumn strings(int count) {
+            byte encoding = data.get(pos++);
+            if (encoding == DICTIONARY) {
+                int size = data.getInt(pos);
+                pos += 4;
+                StringColumn entries = plain(size);
+                String[] dictionary = new String[size];
+                for (int i = 0; i < size; i++) {
+                    dictionary[i] = entries.get(i);
+                }
+                return new StringColumn(data, -1, -1, dictionary, fixed(4, count));
+            }
+            return plain(count);
+        }
+
+        private StringColumn plain(int count) {
+            int offsets = pos;
+            int blob = offsets + (count + 1) * 4;
+            pos = blob + data.getInt(offsets + count * 4);
+            return new StringColumn(data, offsets, blob, null, -1);
+        }
+    }
+
+    static final class StringColumn {
+        private final ByteBuffer data;
+        private final int offsets;
+        private final int blob;
+        private final String[] dictionary;
+        private final int codes;
+
+        StringColumn(ByteBuffer data, int offsets, int blob, String[] dictionary, int codes) {
+            this.data = data;
+            this.offsets = offsets;
+            this.blob = blob;
+            this.dictionary = dictionary;
+            this.codes = codes;
+        }
+
+        String get(int row) {
+            if (dictionary != null) {
+                return dictionary[data.getInt(codes + row * 4)];
+            }
+            int start = data.getInt(offsets + row * 4);
+            int end = data.getInt(offsets + row * 4 + 4);
+            byte[] bytes = new byte[end - start];
+            data.get(blob + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    static final class Contents {
+        final ByteBuffer data;
+        final List<Section> sections;
+        final int idIndex;
+
+        Contents(ByteBuffer data, List<Section> sections, int idIndex) {
+            this.data = data;
+            this.sections = sections;
+            this.idIndex = idIndex;
+        }
+    }
+
+    abstract static class Section {
+        final ByteBuffer data;
+        final int rows;
+        final StringColumn ids;
+        private final StringColumn locations;
+        private final StringColumn statuses;
+        private final int updatedSeconds;
+        private final int updatedNanos;
+        private final int latitudes;
+        private final int longitudes;
+
+        Section(ColumnReader columns) {
+            this.data = columns.data;
+            this.rows = columns.rows;
+            this.ids = columns.strings();
+            this.locations = columns.strings();
+            this.statuses = columns.strings();
+            this.updatedSeconds = columns.fixed(8);
+            this.updatedNanos = columns.fixed(4);
+            this.latitudes = columns.version >= 3 ? columns.fixed(8) : -1;
+            this.longitudes = columns.version >= 3 ? columns.fixed(8) : -1;
+        }
+
+        abstract Class<? extends CityResource> resourceType();
+
+        abstract Set<ResourceStatus> supportedStatuses();
+
+        abstract CityResource create(int row, String id, String location, String status);
+
+        CityResource materialize(int row) {
+            CityResource resource = create(row, ids.get(row), locations.get(row), statuses.get(row));
+            resource.lastUpdated = LocalDateTime.ofEpochSecond(data.getLong(updatedSeconds + row * 8),
+                    data.getInt(updatedNanos + row * 4), ZoneOffset.UTC);
+            if (latitudes >= 0) {
+                resource.latitude = data.getDouble(latitudes + row * 8);
+                resource.longitude = data.getDouble(longitudes + row * 8);
+            }
+            return resource;
+        }
+
+        void visit(int row, CityRepository.RowVisitor visitor) {
+            String id = ids.get(row);
+            ResourceStatus status = ResourceStatus.parse(statuses.get(row), supportedStatuses());
+            if (latitudes >= 0) {
+                visitor.visit(id, resourceType(), status, data.getDouble(latitudes + row * 8),
+                        data.getDouble(longitudes + row * 8));
+            } else {
+                String location = locations.get(row);
+                visitor.visit(id, resourceType(), status, CityGeography.defaultLatitude(location, id),
+                        CityGeography.defaultLongitude(location, id));
+            }
+        }
+
+        void seed(StatusIndex index) {
+            for (int row = 0; row < rows; row++) {
+                index.add(ids.get(row), ResourceStatus.parse(statuses.get(row), supportedStatuses()), groupsAt(row));
+            }
+        }
+
+        String[] groupsAt(int row) {
+            return new String[] { resourceType().getSimpleName() };
+        }
+
+        void seed(CityMetrics metrics) {
+            for (int row = 0; row < rows; row++) {
+                metrics.seed(resourceType(), locations.get(row), passengersAt(row), energyConsumedAt(row),
+                        energyOutputAt(row), maintenanceCostAt(row));
+            }
+        }
+
+        abstract double maintenanceCostAt(int row);
+
+        long passengersAt(int row) {
+            return 0;
+        }
+
+        double energyConsumedAt(int row) {
+            return 0.0;
+        }
+
+        double energyOutputAt(int row) {
+            return 0.0;
+        }
+    }
+
+    static final class TransportSection extends Section {
+        private final StringColumn vehicleTypes;
+        private final int passengerCapacity;
+        private final int fuelConsumptionRate;
+        private final int currentPassengers;
+
+        TransportSection(ColumnReader columns) {
+            super(columns);
+            this.vehicleTypes = columns.strings();
+            this.passengerCapacity = columns.fixed(4);
+            this.fuelConsumptionRate = columns.fixed(8);
+            this.currentPassengers = columns.fixed(4);
+        }
+
+        @Override
+        Class<? extends CityResource> resourceType() {
+            return TransportUnit.class;
+        }
+
+        @Override
+        Set<ResourceStatus> supportedStatuses() {
+            return TransportUnit.STATUSES;
+        }
+
+        @Override
+        long passengersAt(int row) {
+            return data.getInt(currentPassengers + row * 4);
+        }
+
+        @Override
+        double maintenanceCostAt(int row) {
+            return TransportUnit.maintenanceCost(vehicleTypes.get(row), data.getInt(passengerCapacity + row * 4),
+                    data.getDouble(fuelConsumptionRate + row * 8));
+        }
+
+        @Override
+        CityResource create(int row, String id, String location, String status) {
+            TransportUnit unit = new TransportUnit(id, location, status, vehicleTypes.get(row),
+                    data.getInt(passengerCapacity + row * 4), data.getDouble(fuelConsumptionRate + row * 8));
+            unit.restoreCurrentPassengers(data.getInt(currentPassengers + row * 4));
+            return unit;
+        }
+    }
+
+    static final class PowerSection extends Section {
+        private final StringColumn powerTypes;
+        private final int energyOutput;
+        private final int consumerStart;
+        private final StringColumn consumerIds;
+        private final StringColumn consumerTypes;
+        private final int consumerConsumption;
+
+        PowerSection(ColumnReader columns) {
+            super(columns);
+            this.powerTypes = columns.strings();
+            this.energyOutput = columns.fixed(8);
+            this.consumerStart = columns.fixed(4, rows + 1);
+            int consumerCount = data.getInt(consumerStart + rows * 4);
+            this.consumerIds = columns.strings(consumerCount);
+            this.consumerTypes = columns.strings(consumerCount);
+            this.consumerConsumption = columns.fixed(8, consumerCount);
+        }
+
+        @Override
+        Class<? extends CityResource> resourceType() {
+            return PowerStation.class;
+        }
+
+        @Override
+        Set<ResourceStatus> supportedStatuses() {
+            return PowerStation.STATUSES;
+        }
+
+        @Override
+        double energyConsumedAt(int row) {
+            double consumed = 0.0;
+            int to = data.getInt(consumerStart + row * 4 + 4);
+            for (int c = data.getInt(consumerStart + row * 4); c < to; c++) {
+                consumed += data.getDouble(consumerConsumption + c * 8);
+            }
+            return consumed;
+        }
+
+        @Override
+        double energyOutputAt(int row) {
+            return data.getDouble(energyOutput + row * 8);
+        }
+
+        @Override
+        double maintenanceCostAt(int row) {
+            int consumers = data.getInt(consumerStart + row * 4 + 4) - data.getInt(consumerStart + row * 4);
+            return PowerStation.maintenanceCost(powerTypes.get(row), data.getDouble(energyOutput + row * 8),
+                    consumers);
+        }
+
+        @Override
+        CityResource create(int row, String id, String location, String status) {
+            PowerStation station = new PowerStation(id, location, status, data.getDouble(energyOutput + row * 8),
+                    powerTypes.get(row));
+            int from = data.getInt(consumerStart + row * 4);
+            int to = data.getInt(consumerStart + row * 4 + 4);
+            for (int c = from; c < to; c++) {
+                station.getConnectedConsumers().add(new Consumer(consumerIds.get(c), consumerTypes.get(c),
+                        data.getDouble(consumerConsumption + c * 8)));
+            }
+            return station;
+        }
+    }
+
+    private static final class EmergencySection extends Section {
+        private final StringColumn serviceTypes;
+        private final int responseTime;
+        private final int callsHandled;
+
+        EmergencySection(ColumnReader columns) {
+            super(columns);
+            this.serviceTypes = columns.strings();
+            this.responseTime = columns.fixed(4);
+            this.callsHandled = columns.fixed(4);
+        }
+
+        @Override
+        Class<? extends CityResource> resourceType() {
+            return EmergencyService.class;
+        }
+
+        @Override
+        Set<ResourceStatus> supportedStatuses() {
+            return EmergencyService.STATUSES;
+        }
+
+        @Override
+        String[] groupsAt(int row) {
+            return new String[] { resourceType().getSimpleName(), serviceTypes.get(row) };
+        }
+
+        @Override
+        double maintenanceCostAt(int row) {
+            return EmergencyService.maintenanceCost(serviceTypes.get(row), data.getInt(callsHandled + row * 4));
+        }
+
+        @Override
+        CityResource create(int row, String id, String location, String status) {
+            return new EmergencyService(id, location, status, serviceTypes.get(row),
+                    data.getInt(responseTime + row * 4), data.getInt(callsHandled + row * 4));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package smartcity;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+public final class CityEvent {
+    public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    public enum Type {
+        ALERT, DISPATCH, TRAFFIC, STATUS_CHANGE, INFO
+    }
+
+    private final Type type;
+    private final String resourceID;
+    private final String message;
+    private final long timeMillis;
+
+    public CityEvent(Type type, String resourceID, String message) {
+        this(type, resourceID, message, System.currentTimeMillis());
+    }
+
+    public CityEvent(Type type, String resourceID, String message, long timeMillis) {
+        this.type = type;
+        this.resourceID = resourceID;
+        this.message = message;
+        this.timeMillis = timeMillis;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getResourceID() {
+        return resourceID;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public LocalDateTime getTime() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), ZoneId.systemDefault());
+    }
+
+    @Override
+    public String toString() {
+        return message + " at " + getTime().format(TIME_FORMAT);
+    }
+}
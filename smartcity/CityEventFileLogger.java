@@ -0,0 +1,52 @@
+package smartcity;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+public class CityEventFileLogger implements CityEventListener, AutoCloseable {
+    private static final DateTimeFormatter LOG_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final String filename;
+    private final BufferedWriter writer;
+    private boolean failed;
+
+    public CityEventFileLogger(String filename) throws IOException {
+        this.filename = filename;
+        this.writer = Files.newBufferedWriter(Paths.get(filename), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void onEvents(List<CityEvent> batch) {
+        if (failed) {
+            return;
+        }
+        try {
+            for (CityEvent event : batch) {
+                writer.write(event.getTime().format(LOG_TIME_FORMAT));
+                writer.write(' ');
+                writer.write(event.getType().name());
+                writer.write(' ');
+                writer.write(event.getResourceID() == null ? "-" : event.getResourceID());
+                writer.write(' ');
+                writer.write(event.getMessage());
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            failed = true;
+            CityEvents.publishFailure(null, "Writing event log " + filename, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
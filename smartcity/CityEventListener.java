@@ -0,0 +1,7 @@
+package smartcity;
+
+import java.util.List;
+
+public interface CityEventListener {
+    void onEvents(List<CityEvent> batch);
+}
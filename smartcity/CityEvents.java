@@ -0,0 +1,149 @@
+package smartcity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public final class CityEvents {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private CityEvents() {
+    }
+
+    public static Subscription subscribe(String name, CityEventListener listener) {
+        return subscribe(name, DEFAULT_CAPACITY, listener);
+    }
+
+    public static Subscription subscribe(String name, int capacity, CityEventListener listener) {
+        Subscription subscription = new Subscription(name, capacity, listener);
+        subscriptions.add(subscription);
+        subscription.consumer.start();
+        return subscription;
+    }
+
+    public static boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public static void publish(CityEvent.Type type, String resourceID, String message) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        publish(new CityEvent(type, resourceID, message));
+    }
+
+    public static void publish(CityEvent event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    public static void publishFailure(String resourceID, String action, Throwable failure) {
+        publishFailure(null, resourceID, action, failure);
+    }
+
+    private static void publishFailure(Subscription failing, String resourceID, String action, Throwable failure) {
+        String message = action + " failed: " + failure;
+        boolean delivered = false;
+        for (Subscription subscription : subscriptions) {
+            if (subscription != failing) {
+                subscription.offer(new CityEvent(CityEvent.Type.ALERT, resourceID, message));
+                delivered = true;
+            }
+        }
+        if (!delivered) {
+            System.err.println(message);
+        }
+    }
+
+    public static final class Subscription implements AutoCloseable {
+        private final String name;
+        private final EventRing ring;
+        private final CityEventListener listener;
+        private final Thread consumer;
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean waiting;
+        private volatile boolean closed;
+
+        private Subscription(String name, int capacity, CityEventListener listener) {
+            this.name = name;
+            this.ring = new EventRing(capacity);
+            this.listener = listener;
+            this.consumer = new Thread(this::consume, "events-" + name);
+            this.consumer.setDaemon(true);
+        }
+
+        private void offer(CityEvent event) {
+            if (!ring.offer(event)) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (waiting) {
+                LockSupport.unpark(consumer);
+            }
+        }
+
+        private void consume() {
+            ArrayList<CityEvent> batch = new ArrayList<>(MAX_BATCH);
+            while (true) {
+                if (ring.drainTo(batch, MAX_BATCH) == 0) {
+                    if (closed) {
+                        return;
+                    }
+                    waiting = true;
+                    if (ring.drainTo(batch, MAX_BATCH) == 0) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        waiting = false;
+                        continue;
+                    }
+                    waiting = false;
+                }
+                try {
+                    listener.onEvents(batch);
+                } catch (RuntimeException e) {
+                    publishFailure(this, null, "Event listener " + name, e);
+                }
+                delivered.addAndGet(batch.size());
+                batch = new ArrayList<>(MAX_BATCH);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public int getCapacity() {
+            return ring.capacity();
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+            closed = true;
+            LockSupport.unpark(consumer);
+            if (Thread.currentThread() != consumer) {
+                try {
+                    consumer.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
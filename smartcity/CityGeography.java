@@ -0,0 +1,48 @@
+package smartcity;
+
+public final class CityGeography {
+    public static final double MIN_LATITUDE = 40.55;
+    public static final double MAX_LATITUDE = 40.95;
+    public static final double MIN_LONGITUDE = -74.25;
+    public static final double MAX_LONGITUDE = -73.70;
+    static final double KM_PER_DEGREE = 111.32;
+    private static final double ZONE_MARGIN = 0.05;
+    private static final double JITTER_DEGREES = 0.01;
+
+    private CityGeography() {
+    }
+
+    public static double defaultLatitude(String location, String resourceID) {
+        return place(MIN_LATITUDE, MAX_LATITUDE, fraction(mix(hash(location))), fraction(mix(hash(resourceID))));
+    }
+
+    public static double defaultLongitude(String location, String resourceID) {
+        return place(MIN_LONGITUDE, MAX_LONGITUDE, fraction(mix(hash(location) ^ 0x5DEECE66DL)),
+                fraction(mix(hash(resourceID) ^ 0x5DEECE66DL)));
+    }
+
+    public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dy = (lat2 - lat1) * KM_PER_DEGREE;
+        double dx = (lon2 - lon1) * KM_PER_DEGREE * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static double place(double min, double max, double zone, double jitter) {
+        double span = (max - min) * (1 - 2 * ZONE_MARGIN);
+        return min + (max - min) * ZONE_MARGIN + zone * span + (jitter * 2 - 1) * JITTER_DEGREES;
+    }
+
+    private static long hash(String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static double fraction(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+}
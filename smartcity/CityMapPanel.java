@@ -1,49 +1,607 @@
 package smartcity;
 
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.swing.*;
 
-public class CityMapPanel extends JPanel {
-    private ArrayList<CityResource> resources;
+public class CityMapPanel extends JPanel implements RepositoryListener {
+    private static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 10);
+    private static final Font CLUSTER_FONT = new Font("Arial", Font.BOLD, 10);
+    private static final Color[] CATEGORY_COLORS = { Color.GREEN.darker(), Color.BLUE.darker(), Color.RED.darker(),
+            Color.GRAY };
+    private static final int TRANSPORT = 0;
+    private static final int POWER = 1;
+    private static final int EMERGENCY = 2;
+    private static final int OTHER = 3;
+    private static final int MARGIN = 40;
+    private static final int MARKER_SIZE = 12;
+    private static final int LABELLED_MARKER_SIZE = 24;
+    private static final double CLUSTER_PX = 48;
+    private static final double LABEL_CELL_PX = 240;
+    private static final int ALWAYS_LABEL_LIMIT = 100;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int LABEL_WIDTH = 100;
+    private static final int HALO = 6;
+    private static final int ALERT_GRID_COARSENING = 4;
+    private static final Color GRATICULE = new Color(210, 225, 240);
+    private static final Color CITY_BOUNDS = new Color(170, 190, 210);
+    private static final Color ALERT_HALO = new Color(220, 0, 0, 160);
+    private static final Color WARNING_HALO = new Color(255, 140, 0, 160);
+    private static final Color[] HALO_COLORS = { ALERT_HALO, WARNING_HALO };
+
+    private long version = -1;
+    private transient SpatialGrid<String> grid;
+    private double lonScale = 1.0;
+    private double centerLat;
+    private double centerLon;
+    private double pixelsPerDegree;
+    private double fitPixelsPerDegree;
+    private boolean fitted;
+    private Point dragFrom;
+    private final transient Set<CityResource> statusChanges = ConcurrentHashMap.newKeySet();
+    private final transient ConcurrentLinkedQueue<Move> moves = new ConcurrentLinkedQueue<>();
+    private final transient Map<String, double[]> alerting = new HashMap<>();
+    private transient SpatialGrid<String> alertGrid;
+    private final transient List<Rectangle> resourceDirty = new ArrayList<>();
+    private final transient List<Rectangle> statusDirty = new ArrayList<>();
+    private transient BufferedImage background;
+    private transient BufferedImage resourceLayer;
+    private transient BufferedImage statusLayer;
+    private boolean layersValid;
+    private boolean clustered;
+    private int drawn;
 
     public CityMapPanel() {
-        this.resources = new ArrayList<>();
         setPreferredSize(new Dimension(300, 300));
         setBackground(new Color(240, 248, 255));
         setBorder(BorderFactory.createTitledBorder("City Map"));
+        MouseAdapter navigation = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragFrom = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragFrom != null && fitted) {
+                    centerLon -= (e.getX() - dragFrom.x) / (pixelsPerDegree * lonScale);
+                    centerLat += (e.getY() - dragFrom.y) / pixelsPerDegree;
+                    dragFrom = e.getPoint();
+                    viewChanged();
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragFrom = null;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    fitted = false;
+                    viewChanged();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(e.getX(), e.getY(), Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()));
+            }
+        };
+        addMouseListener(navigation);
+        addMouseMotionListener(navigation);
+        addMouseWheelListener(navigation);
+    }
+
+    public void updateResources(CityRepository<CityResource> repository) {
+        long current = repository.getVersion();
+        if (current != version) {
+            boolean wasEmpty = grid == null || grid.size() == 0;
+            version = current;
+            moves.clear();
+            statusChanges.clear();
+            Rows rows = new Rows(repository.size());
+            repository.forEachRow(rows);
+            grid = buildGrid(rows);
+            int dimension = Math.max(1, grid.getRows() / ALERT_GRID_COARSENING);
+            alertGrid = new SpatialGrid<>(grid.cellMinLatitude(0), grid.cellMinLongitude(0),
+                    grid.cellMinLatitude(grid.getRows()), grid.cellMinLongitude(grid.getCols()), dimension, dimension,
+                    HALO_COLORS.length);
+            alerting.clear();
+            for (int i = 0; i < rows.size; i++) {
+                if (rows.halos[i] >= 0) {
+                    addAlert(rows.ids[i], rows.halos[i], rows.latitudes[i], rows.longitudes[i]);
+                }
+            }
+            fitted = fitted && !wasEmpty;
+            viewChanged();
+            return;
+        }
+        applyChanges();
+    }
+
+    @Override
+    public void resourceAdded(CityResource resource) {
+    }
+
+    @Override
+    public void resourceRemoved(String resourceID) {
+    }
+
+    @Override
+    public void statusChanged(CityResource resource) {
+        statusChanges.add(resource);
+    }
+
+    @Override
+    public void resourceMoved(CityResource resource, double oldLatitude, double oldLongitude) {
+        moves.add(new Move(resource, oldLatitude, oldLongitude, resource.getLatitude(), resource.getLongitude()));
     }
 
-    public void updateResources(ArrayList<CityResource> resources) {
-        this.resources = resources;
+    private void applyChanges() {
+        if (grid == null) {
+            return;
+        }
+        boolean incremental = layersValid && fitted;
+        int resourceMark = resourceDirty.size();
+        int statusMark = statusDirty.size();
+        for (Move move = moves.poll(); move != null; move = moves.poll()) {
+            String id = move.resource.getResourceID();
+            if (!grid.remove(id, move.fromLatitude, move.fromLongitude)) {
+                continue;
+            }
+            grid.insert(id, move.toLatitude, move.toLongitude, categoryOf(move.resource.getClass()));
+            if (incremental && clustered) {
+                layersValid = false;
+            } else if (incremental) {
+                resourceDirty.add(markerBounds(move.fromLatitude, move.fromLongitude));
+                resourceDirty.add(markerBounds(move.toLatitude, move.toLongitude));
+            }
+            if (alerting.containsKey(id)) {
+                addAlert(id, removeAlert(id), move.toLatitude, move.toLongitude);
+                if (incremental) {
+                    statusDirty.add(haloBounds(move.fromLatitude, move.fromLongitude));
+                    statusDirty.add(haloBounds(move.toLatitude, move.toLongitude));
+                }
+            }
+        }
+        for (CityResource resource : statusChanges) {
+            statusChanges.remove(resource);
+            String id = resource.getResourceID();
+            double[] position = alerting.get(id);
+            int halo = haloOf(resource.getStatus());
+            if (halo < 0) {
+                if (position == null) {
+                    continue;
+                }
+                removeAlert(id);
+            } else if (position == null) {
+                position = addAlert(id, halo, resource.getLatitude(), resource.getLongitude());
+            } else {
+                removeAlert(id);
+                addAlert(id, halo, position[0], position[1]);
+            }
+            if (incremental) {
+                statusDirty.add(haloBounds(position[0], position[1]));
+            }
+        }
+        if (!layersValid || !fitted) {
+            repaint();
+            return;
+        }
+        for (int i = resourceMark; i < resourceDirty.size(); i++) {
+            repaint(resourceDirty.get(i));
+        }
+        for (int i = statusMark; i < statusDirty.size(); i++) {
+            repaint(statusDirty.get(i));
+        }
+    }
+
+    private double[] addAlert(String id, int halo, double latitude, double longitude) {
+        double[] position = { latitude, longitude, halo };
+        alerting.put(id, position);
+        alertGrid.insert(id, latitude, longitude, halo);
+        return position;
+    }
+
+    private int removeAlert(String id) {
+        double[] position = alerting.remove(id);
+        if (position == null) {
+            return -1;
+        }
+        alertGrid.remove(id, position[0], position[1]);
+        return (int) position[2];
+    }
+
+    private void viewChanged() {
+        layersValid = false;
         repaint();
     }
 
+    public void zoom(int x, int y, double factor) {
+        if (!fitted) {
+            return;
+        }
+        double lat = latitudeAt(y);
+        double lon = longitudeAt(x);
+        pixelsPerDegree = Math.max(fitPixelsPerDegree / 4, pixelsPerDegree * factor);
+        centerLat = lat + (y - getHeight() / 2.0) / pixelsPerDegree;
+        centerLon = lon - (x - getWidth() / 2.0) / (pixelsPerDegree * lonScale);
+        viewChanged();
+    }
+
+    private static SpatialGrid<String> buildGrid(Rows rows) {
+        int n = rows.size;
+        double[] lats = rows.latitudes;
+        double[] lons = rows.longitudes;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minLat = Math.min(minLat, lats[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+            minLon = Math.min(minLon, lons[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+        }
+        if (n == 0) {
+            minLat = CityGeography.MIN_LATITUDE;
+            maxLat = CityGeography.MAX_LATITUDE;
+            minLon = CityGeography.MIN_LONGITUDE;
+            maxLon = CityGeography.MAX_LONGITUDE;
+        }
+        int dimension = SpatialGrid.dimensionFor(n);
+        SpatialGrid<String> built = new SpatialGrid<>(minLat, minLon, maxLat, maxLon, dimension, dimension,
+                CATEGORY_COLORS.length);
+        for (int i = 0; i < n; i++) {
+            built.insert(rows.ids[i], lats[i], lons[i], rows.categories[i]);
+        }
+        return built;
+    }
+
+    private static int categoryOf(Class<?> type) {
+        if (TransportUnit.class.isAssignableFrom(type))
+            return TRANSPORT;
+        if (PowerStation.class.isAssignableFrom(type))
+            return POWER;
+        if (EmergencyService.class.isAssignableFrom(type))
+            return EMERGENCY;
+        return OTHER;
+    }
+
+    private static int haloOf(ResourceStatus status) {
+        if (status == null || status.isInService()) {
+            return -1;
+        }
+        return switch (status) {
+            case OUTAGE, EMERGENCY -> 0;
+            default -> 1;
+        };
+    }
+
+    private int markerSize() {
+        return labelled() ? LABELLED_MARKER_SIZE : MARKER_SIZE;
+    }
+
+    private double cellPixels() {
+        return Math.min(grid.getCellHeight() * pixelsPerDegree, grid.getCellWidth() * pixelsPerDegree * lonScale);
+    }
+
+    private boolean labelled() {
+        return cellPixels() >= LABEL_CELL_PX || grid.size() <= ALWAYS_LABEL_LIMIT;
+    }
+
+    private Rectangle markerBounds(double latitude, double longitude) {
+        int size = markerSize();
+        int x = screenX(longitude) - size / 2;
+        int y = screenY(latitude) - size / 2;
+        return new Rectangle(x - 4, y - 2, size + LABEL_WIDTH, size + 18);
+    }
+
+    private Rectangle haloBounds(double latitude, double longitude) {
+        int size = markerSize() + 2 * HALO;
+        return new Rectangle(screenX(longitude) - size / 2 - 2, screenY(latitude) - size / 2 - 2, size + 4,
+                size + 4);
+    }
+
+    private void fitToData() {
+        int width = Math.max(1, getWidth() - 2 * MARGIN);
+        int height = Math.max(1, getHeight() - 2 * MARGIN);
+        double minLat = grid.cellMinLatitude(0);
+        double maxLat = grid.cellMinLatitude(grid.getRows());
+        double minLon = grid.cellMinLongitude(0);
+        double maxLon = grid.cellMinLongitude(grid.getCols());
+        centerLat = (minLat + maxLat) / 2;
+        centerLon = (minLon + maxLon) / 2;
+        lonScale = Math.cos(Math.toRadians(centerLat));
+        fitPixelsPerDegree = Math.min(width / ((maxLon - minLon) * lonScale), height / (maxLat - minLat));
+        pixelsPerDegree = fitPixelsPerDegree;
+        fitted = true;
+    }
+
+    private double latitudeAt(int y) {
+        return centerLat - (y - getHeight() / 2.0) / pixelsPerDegree;
+    }
+
+    private double longitudeAt(int x) {
+        return centerLon + (x - getWidth() / 2.0) / (pixelsPerDegree * lonScale);
+    }
+
+    private int screenX(double longitude) {
+        return (int) Math.round(getWidth() / 2.0 + (longitude - centerLon) * pixelsPerDegree * lonScale);
+    }
+
+    private int screenY(double latitude) {
+        return (int) Math.round(getHeight() / 2.0 - (latitude - centerLat) * pixelsPerDegree);
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        if (grid == null || grid.size() == 0) {
+            return;
+        }
+        if (!fitted) {
+            fitToData();
+        }
         int width = getWidth();
         int height = getHeight();
-        Random rand = new Random(42);
-        for (CityResource resource : resources) {
-            int x = 40 + rand.nextInt(width - 80);
-            int y = 40 + rand.nextInt(height - 80);
-            Color color;
-            if (resource instanceof TransportUnit)
-                color = Color.GREEN.darker();
-            else if (resource instanceof PowerStation)
-                color = Color.BLUE.darker();
-            else if (resource instanceof EmergencyService)
-                color = Color.RED.darker();
-            else
-                color = Color.GRAY;
-            g.setColor(color);
-            g.fillOval(x, y, 24, 24);
-            g.setColor(Color.BLACK);
-            g.drawOval(x, y, 24, 24);
-            g.setFont(new Font("Arial", Font.PLAIN, 10));
-            g.drawString(resource.getResourceID(), x - 2, y + 36);
-        }
-    }
-}
\ No newline at end of file
+        if (background == null || background.getWidth() != width || background.getHeight() != height) {
+            background = createLayer(width, height);
+            resourceLayer = createLayer(width, height);
+            statusLayer = createLayer(width, height);
+            layersValid = false;
+        }
+        if (!layersValid) {
+            renderBackground();
+            renderResources(null);
+            renderStatus(null);
+            resourceDirty.clear();
+            statusDirty.clear();
+            layersValid = true;
+        } else {
+            for (Rectangle region : resourceDirty) {
+                renderResources(region);
+            }
+            for (Rectangle region : statusDirty) {
+                renderStatus(region);
+            }
+            resourceDirty.clear();
+            statusDirty.clear();
+        }
+        Graphics2D g2d = (Graphics2D) g.create();
+        Insets insets = getInsets();
+        g2d.clipRect(insets.left, insets.top, width - insets.left - insets.right,
+                height - insets.top - insets.bottom);
+        g2d.drawImage(background, 0, 0, null);
+        g2d.drawImage(resourceLayer, 0, 0, null);
+        g2d.drawImage(statusLayer, 0, 0, null);
+        g2d.setColor(Color.DARK_GRAY);
+        g2d.setFont(LABEL_FONT);
+        g2d.drawString(String.format("%d resources | %d drawn | %d alerts | zoom %.1fx", grid.size(), drawn,
+                alerting.size(), pixelsPerDegree / fitPixelsPerDegree), insets.left + 4, height - insets.bottom - 4);
+        g2d.dispose();
+    }
+
+    private BufferedImage createLayer(int width, int height) {
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config != null) {
+            return config.createCompatibleImage(Math.max(1, width), Math.max(1, height), Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static Graphics2D clear(BufferedImage layer, Rectangle region) {
+        Graphics2D g2d = layer.createGraphics();
+        if (region != null) {
+            g2d.clip(region);
+        }
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, layer.getWidth(), layer.getHeight());
+        g2d.setComposite(AlphaComposite.SrcOver);
+        return g2d;
+    }
+
+    private void renderBackground() {
+        Graphics2D g2d = background.createGraphics();
+        g2d.setColor(getBackground());
+        g2d.fillRect(0, 0, background.getWidth(), background.getHeight());
+        double step = Math.pow(10, Math.ceil(Math.log10(80 / pixelsPerDegree)));
+        g2d.setColor(GRATICULE);
+        double minLat = latitudeAt(background.getHeight());
+        double maxLat = latitudeAt(0);
+        double minLon = longitudeAt(0);
+        double maxLon = longitudeAt(background.getWidth());
+        for (double lat = Math.floor(minLat / step) * step; lat <= maxLat; lat += step) {
+            int y = screenY(lat);
+            g2d.drawLine(0, y, background.getWidth(), y);
+        }
+        for (double lon = Math.floor(minLon / step) * step; lon <= maxLon; lon += step) {
+            int x = screenX(lon);
+            g2d.drawLine(x, 0, x, background.getHeight());
+        }
+        g2d.setColor(CITY_BOUNDS);
+        int left = screenX(CityGeography.MIN_LONGITUDE);
+        int top = screenY(CityGeography.MAX_LATITUDE);
+        g2d.drawRect(left, top, screenX(CityGeography.MAX_LONGITUDE) - left,
+                screenY(CityGeography.MIN_LATITUDE) - top);
+        g2d.dispose();
+    }
+
+    private void renderResources(Rectangle region) {
+        Graphics2D g2d = clear(resourceLayer, region);
+        double cellPx = cellPixels();
+        clustered = cellPx < CLUSTER_PX;
+        if (clustered) {
+            drawn = paintClusters(g2d, cellPx);
+        } else {
+            int count = paintMarkers(g2d, labelled(), region);
+            if (region == null) {
+                drawn = count;
+            }
+        }
+        g2d.dispose();
+    }
+
+    private void renderStatus(Rectangle region) {
+        Graphics2D g2d = clear(statusLayer, region);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setStroke(new BasicStroke(3f));
+        int size = markerSize() + 2 * HALO;
+        Rectangle area = region != null ? region : new Rectangle(0, 0, statusLayer.getWidth(),
+                statusLayer.getHeight());
+        double padLat = size / pixelsPerDegree;
+        double padLon = size / (pixelsPerDegree * lonScale);
+        alertGrid.query(latitudeAt(area.y + area.height) - padLat, longitudeAt(area.x) - padLon,
+                latitudeAt(area.y) + padLat, longitudeAt(area.x + area.width) + padLon, (_, lat, lon, halo) -> {
+                    g2d.setColor(HALO_COLORS[halo]);
+                    g2d.drawOval(screenX(lon) - size / 2, screenY(lat) - size / 2, size, size);
+                });
+        g2d.dispose();
+    }
+
+    private int paintClusters(Graphics2D g2d, double cellPx) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setFont(CLUSTER_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        int span = Math.max(1, (int) Math.ceil(CLUSTER_PX / cellPx));
+        int fromRow = grid.rowOf(latitudeAt(getHeight())) / span * span;
+        int toRow = grid.rowOf(latitudeAt(0));
+        int fromCol = grid.colOf(longitudeAt(0)) / span * span;
+        int toCol = grid.colOf(longitudeAt(getWidth()));
+        int[] byCategory = new int[grid.getCategories()];
+        int drawn = 0;
+        for (int row = fromRow; row <= toRow; row += span) {
+            for (int col = fromCol; col <= toCol; col += span) {
+                int total = 0;
+                double latSum = 0;
+                double lonSum = 0;
+                Arrays.fill(byCategory, 0);
+                for (int r = row; r < Math.min(row + span, grid.getRows()); r++) {
+                    for (int c = col; c < Math.min(col + span, grid.getCols()); c++) {
+                        int count = grid.cellCount(r, c);
+                        if (count == 0) {
+                            continue;
+                        }
+                        total += count;
+                        latSum += count * (grid.cellMinLatitude(r) + grid.getCellHeight() / 2);
+                        lonSum += count * (grid.cellMinLongitude(c) + grid.getCellWidth() / 2);
+                        for (int k = 0; k < byCategory.length; k++) {
+                            byCategory[k] += grid.cellCount(r, c, k);
+                        }
+                    }
+                }
+                if (total == 0) {
+                    continue;
+                }
+                int dominant = 0;
+                for (int k = 1; k < byCategory.length; k++) {
+                    if (byCategory[k] > byCategory[dominant]) {
+                        dominant = k;
+                    }
+                }
+                int x = screenX(lonSum / total);
+                int y = screenY(latSum / total);
+                int size = MARKER_SIZE + (int) (6 * Math.log10(total));
+                g2d.setColor(CATEGORY_COLORS[dominant]);
+                g2d.fillOval(x - size / 2, y - size / 2, size, size);
+                g2d.setColor(Color.BLACK);
+                g2d.drawOval(x - size / 2, y - size / 2, size, size);
+                if (total > 1) {
+                    String label = String.valueOf(total);
+                    g2d.setColor(Color.WHITE);
+                    g2d.drawString(label, x - fm.stringWidth(label) / 2, y + fm.getAscent() / 2 - 1);
+                }
+                drawn++;
+            }
+        }
+        return drawn;
+    }
+
+    private int paintMarkers(Graphics2D g2d, boolean labels, Rectangle region) {
+        int size = labels ? LABELLED_MARKER_SIZE : MARKER_SIZE;
+        Rectangle area = region != null ? region : new Rectangle(0, 0, getWidth(), getHeight());
+        double padLat = (size + 18) / pixelsPerDegree;
+        double padLon = (size + LABEL_WIDTH) / (pixelsPerDegree * lonScale);
+        g2d.setFont(LABEL_FONT);
+        int[] count = new int[1];
+        grid.query(latitudeAt(area.y + area.height) - padLat, longitudeAt(area.x) - padLon,
+                latitudeAt(area.y) + padLat, longitudeAt(area.x + area.width) + padLon,
+                (id, lat, lon, category) -> {
+                    int x = screenX(lon) - size / 2;
+                    int y = screenY(lat) - size / 2;
+                    g2d.setColor(CATEGORY_COLORS[category]);
+                    g2d.fillOval(x, y, size, size);
+                    g2d.setColor(Color.BLACK);
+                    g2d.drawOval(x, y, size, size);
+                    if (labels) {
+                        g2d.drawString(id, x - 2, y + size + 12);
+                    }
+                    count[0]++;
+                });
+        return count[0];
+    }
+
+    private static final class Move {
+        final CityResource resource;
+        final double fromLatitude;
+        final double fromLongitude;
+        final double toLatitude;
+        final double toLongitude;
+
+        Move(CityResource resource, double fromLatitude, double fromLongitude, double toLatitude,
+                double toLongitude) {
+            this.resource = resource;
+            this.fromLatitude = fromLatitude;
+            this.fromLongitude = fromLongitude;
+            this.toLatitude = toLatitude;
+            this.toLongitude = toLongitude;
+        }
+    }
+
+    private static final class Rows implements CityRepository.RowVisitor {
+        String[] ids;
+        int[] categories;
+        int[] halos;
+        double[] latitudes;
+        double[] longitudes;
+        int size;
+
+        Rows(int capacity) {
+            ids = new String[Math.max(16, capacity)];
+            categories = new int[ids.length];
+            halos = new int[ids.length];
+            latitudes = new double[ids.length];
+            longitudes = new double[ids.length];
+        }
+
+        @Override
+        public void visit(String resourceID, Class<? extends CityResource> type, ResourceStatus status,
+                double latitude, double longitude) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                categories = Arrays.copyOf(categories, capacity);
+                halos = Arrays.copyOf(halos, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+            }
+            ids[size] = resourceID;
+            categories[size] = categoryOf(type);
+            halos[size] = haloOf(status);
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package smartcity;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class CityMetrics {
+    private final Counters total = new Counters();
+    private final Map<String, Counters> byZone = new ConcurrentHashMap<>();
+    private final Map<String, Counters> byType = new ConcurrentHashMap<>();
+
+    public Snapshot snapshot() {
+        return total.snapshot();
+    }
+
+    public Map<String, Snapshot> snapshotByZone() {
+        return snapshotAll(byZone);
+    }
+
+    public Map<String, Snapshot> snapshotByType() {
+        return snapshotAll(byType);
+    }
+
+    public long getResourceCount() {
+        return total.resources.sum();
+    }
+
+    public long getPassengers() {
+        return total.passengers.sum();
+    }
+
+    public double getEnergyConsumed() {
+        return total.energyConsumed.sum();
+    }
+
+    public double getEnergyOutput() {
+        return total.energyOutput.sum();
+    }
+
+    public double getMaintenanceCost() {
+        return total.maintenanceCost.sum();
+    }
+
+    public long getEmergencyResponses() {
+        return total.emergencyResponses.sum();
+    }
+
+    void register(CityResource resource) {
+        synchronized (resource) {
+            if (resource.metrics == this) {
+                return;
+            }
+            if (resource.metrics != null) {
+                resource.metrics.unregister(resource);
+            }
+            resource.metrics = this;
+            apply(resource, 1);
+        }
+    }
+
+    void unregister(CityResource resource) {
+        synchronized (resource) {
+            if (resource.metrics != this) {
+                return;
+            }
+            apply(resource, -1);
+            resource.metrics = null;
+        }
+    }
+
+    void adopt(CityResource resource) {
+        resource.metrics = this;
+    }
+
+    void detach(CityResource resource) {
+        synchronized (resource) {
+            if (resource.metrics == this) {
+                resource.metrics = null;
+            }
+        }
+    }
+
+    void seed(Class<? extends CityResource> type, String zone, long passengers, double energyConsumed,
+            double energyOutput, double maintenanceCost) {
+        for (Counters counters : countersFor(type.getSimpleName(), zone)) {
+            counters.resources.increment();
+            counters.passengers.add(passengers);
+            counters.energyConsumed.add(energyConsumed);
+            counters.energyOutput.add(energyOutput);
+            counters.maintenanceCost.add(maintenanceCost);
+        }
+    }
+
+    void relocate(CityResource resource, String from, String to) {
+        Counters source = zone(from);
+        Counters target = zone(to);
+        long passengers = passengersOf(resource);
+        double consumed = energyConsumedBy(resource);
+        double output = energyOutputOf(resource);
+        double cost = resource.calculateMaintenanceCost();
+        source.resources.decrement();
+        source.passengers.add(-passengers);
+        source.energyConsumed.add(-consumed);
+        source.energyOutput.add(-output);
+        source.maintenanceCost.add(-cost);
+        target.resources.increment();
+        target.passengers.add(passengers);
+        target.energyConsumed.add(consumed);
+        target.energyOutput.add(output);
+        target.maintenanceCost.add(cost);
+    }
+
+    void passengersChanged(CityResource resource, long delta) {
+        for (Counters counters : countersFor(resource)) {
+            counters.passengers.add(delta);
+        }
+    }
+
+    void energyConsumedChanged(CityResource resource, double delta) {
+        for (Counters counters : countersFor(resource)) {
+            counters.energyConsumed.add(delta);
+        }
+    }
+
+    void maintenanceCostChanged(CityResource resource, double delta) {
+        for (Counters counters : countersFor(resource)) {
+            counters.maintenanceCost.add(delta);
+        }
+    }
+
+    void energyOutputChanged(CityResource resource, double delta) {
+        for (Counters counters : countersFor(resource)) {
+            counters.energyOutput.add(delta);
+        }
+    }
+
+    void emergencyResponded(CityResource resource) {
+        for (Counters counters : countersFor(resource)) {
+            counters.emergencyResponses.increment();
+        }
+    }
+
+    void reset() {
+        total.reset();
+        byZone.clear();
+        byType.clear();
+    }
+
+    private void apply(CityResource resource, int sign) {
+        long passengers = passengersOf(resource);
+        double consumed = energyConsumedBy(resource);
+        double output = energyOutputOf(resource);
+        double cost = resource.calculateMaintenanceCost();
+        for (Counters counters : countersFor(resource)) {
+            counters.resources.add(sign);
+            counters.passengers.add(sign * passengers);
+            counters.energyConsumed.add(sign * consumed);
+            counters.energyOutput.add(sign * output);
+            counters.maintenanceCost.add(sign * cost);
+        }
+    }
+
+    private static long passengersOf(CityResource resource) {
+        return resource instanceof TransportUnit ? ((TransportUnit) resource).getCurrentPassengers() : 0;
+    }
+
+    private static double energyConsumedBy(CityResource resource) {
+        double consumed = 0.0;
+        if (resource instanceof PowerStation) {
+            for (Consumer consumer : ((PowerStation) resource).getConnectedConsumers()) {
+                consumed += consumer.getConsumption();
+            }
+        }
+        return consumed;
+    }
+
+    private static double energyOutputOf(CityResource resource) {
+        return resource instanceof PowerStation ? ((PowerStation) resource).getEnergyOutput() : 0.0;
+    }
+
+    private Counters[] countersFor(CityResource resource) {
+        return countersFor(resource.getClass().getSimpleName(), resource.getLocation());
+    }
+
+    private Counters[] countersFor(String type, String zone) {
+        return new Counters[] { total, byType.computeIfAbsent(type, k -> new Counters()), zone(zone) };
+    }
+
+    private Counters zone(String zone) {
+        return byZone.computeIfAbsent(zone == null ? "" : zone, k -> new Counters());
+    }
+
+    private static Map<String, Snapshot> snapshotAll(Map<String, Counters> counters) {
+        TreeMap<String, Snapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            Snapshot snapshot = entry.getValue().snapshot();
+            if (snapshot.resources != 0) {
+                snapshots.put(entry.getKey(), snapshot);
+            }
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    private static final class Counters {
+        final LongAdder resources = new LongAdder();
+        final LongAdder passengers = new LongAdder();
+        final DoubleAdder energyConsumed = new DoubleAdder();
+        final DoubleAdder energyOutput = new DoubleAdder();
+        final DoubleAdder maintenanceCost = new DoubleAdder();
+        final LongAdder emergencyResponses = new LongAdder();
+
+        Snapshot snapshot() {
+            return new Snapshot(resources.sum(), passengers.sum(), energyConsumed.sum(), energyOutput.sum(),
+                    maintenanceCost.sum(), emergencyResponses.sum());
+        }
+
+        void reset() {
+            resources.reset();
+            passengers.reset();
+            energyConsumed.reset();
+            energyOutput.reset();
+            maintenanceCost.reset();
+            emergencyResponses.reset();
+        }
+    }
+
+    public static final class Snapshot {
+        private final long resources;
+        private final long passengers;
+        private final double energyConsumed;
+        private final double energyOutput;
+        private final double maintenanceCost;
+        private final long emergencyResponses;
+
+        Snapshot(long resources, long passengers, double energyConsumed, double energyOutput,
+                double maintenanceCost, long emergencyResponses) {
+            this.resources = resources;
+            this.passengers = passengers;
+            this.energyConsumed = energyConsumed;
+            this.energyOutput = energyOutput;
+            this.maintenanceCost = maintenanceCost;
+            this.emergencyResponses = emergencyResponses;
+        }
+
+        public long getResources() {
+            return resources;
+        }
+
+        public long getPassengers() {
+            return passengers;
+        }
+
+        public double getEnergyConsumed() {
+            return energyConsumed;
+        }
+
+        public double getEnergyOutput() {
+            return energyOutput;
+        }
+
+        public double getMaintenanceCost() {
+            return maintenanceCost;
+        }
+
+        public long getEmergencyResponses() {
+            return emergencyResponses;
+        }
+    }
+}
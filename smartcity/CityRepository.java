@@ -2,82 +2,597 @@ package smartcity;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-public class CityRepository<T extends CityResource> implements Serializable {
+public final class CityRepository<T extends CityResource> implements Serializable {
     private static final long serialVersionUID = 1941305537978736861L;
-    private ArrayList<T> resources;
-    private ArrayList<String> resourceIDs;
+    private final transient boolean concurrent;
+    private final transient Map<String, Slot<T>> resources;
+    private final transient Map<Class<?>, Map<Long, Slot<T>>> resourcesByType;
+    private final transient AtomicLong sequence;
+    private final transient AtomicLong version;
+    private transient volatile Snapshot<T> snapshot;
+    private final transient Map<Class<?>, Snapshot<?>> typeSnapshots;
+    private transient volatile MappedResourceStore store;
+    private transient volatile int[] tombstones = new int[0];
+    private final transient List<RepositoryListener> listeners = new CopyOnWriteArrayList<>();
+    private final transient Map<String, CityResource> dirtyResources = new ConcurrentHashMap<>();
+    private final transient Set<String> removedSinceSave = ConcurrentHashMap.newKeySet();
+    private final transient CityMetrics metrics = new CityMetrics();
+    private final transient ResponderIndex responders = new ResponderIndex(this::get);
+    private final transient DispatchEngine dispatcher = new DispatchEngine(responders, this::getTimers);
+    private final transient StatusIndex statuses = new StatusIndex();
+    private transient volatile TimingWheel timers = TimingWheel.shared();
+    private final transient ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    interface Capture<V> {
+        V capture() throws IOException;
+    }
+
+    public interface RowVisitor {
+        void visit(String resourceID, Class<? extends CityResource> type, ResourceStatus status, double latitude,
+                double longitude);
+    }
 
     public CityRepository() {
-        this.resources = new ArrayList<>();
-        this.resourceIDs = new ArrayList<>();
+        this(false);
+    }
+
+    public CityRepository(boolean concurrent) {
+        this.concurrent = concurrent;
+        this.resources = concurrent ? new ConcurrentHashMap<>() : new LinkedHashMap<>();
+        this.resourcesByType = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+        this.sequence = new AtomicLong();
+        this.version = new AtomicLong();
+        this.typeSnapshots = new ConcurrentHashMap<>();
     }
 
     public void add(T resource) {
-        if (resourceIDs.contains(resource.getResourceID())) {
+        insert(resource);
+        removedSinceSave.remove(resource.getResourceID());
+        dirtyResources.put(resource.getResourceID(), resource);
+        for (RepositoryListener listener : listeners) {
+            listener.resourceAdded(resource);
+        }
+    }
+
+    private void insert(T resource) {
+        if (storedRow(resource.getResourceID()) >= 0) {
             throw new IllegalArgumentException("Resource ID already exists: " + resource.getResourceID());
         }
-        resources.add(resource);
-        resourceIDs.add(resource.getResourceID());
+        Slot<T> slot = new Slot<>(sequence.incrementAndGet(), resource);
+        resources.compute(resource.getResourceID(), (id, existing) -> {
+            if (existing != null) {
+                throw new IllegalArgumentException("Resource ID already exists: " + id);
+            }
+            typeBucket(resource.getClass()).put(slot.sequence, slot);
+            return slot;
+        });
+        metrics.register(resource);
+        statuses.add(resource.getResourceID(), resource.getStatus(), StatusIndex.groupsOf(resource));
+        if (resource instanceof EmergencyService && responders.add((EmergencyService) resource)) {
+            dispatcher.responderAvailable();
+        }
+        version.incrementAndGet();
     }
 
+    @SuppressWarnings("unchecked")
     public T get(String resourceID) {
-        for (int i = 0; i < resources.size(); i++) {
-            if (resources.get(i).getResourceID().equals(resourceID)) {
-                return resources.get(i);
-            }
+        Slot<T> slot = resources.get(resourceID);
+        if (slot != null) {
+            return slot.resource;
         }
-        return null;
+        int row = storedRow(resourceID);
+        return row < 0 ? null : (T) store.pin(row);
     }
 
     public void remove(String resourceID) {
-        for (int i = 0; i < resources.size(); i++) {
-            if (resources.get(i).getResourceID().equals(resourceID)) {
-                resources.remove(i);
-                resourceIDs.remove(resourceID);
-                break;
+        if (delete(resourceID)) {
+            dirtyResources.remove(resourceID);
+            removedSinceSave.add(resourceID);
+            for (RepositoryListener listener : listeners) {
+                listener.resourceRemoved(resourceID);
+            }
+        }
+    }
+
+    private boolean delete(String resourceID) {
+        Slot<T> removed = resources.remove(resourceID);
+        if (removed != null) {
+            typeBucket(removed.resource.getClass()).remove(removed.sequence, removed);
+            metrics.unregister(removed.resource);
+            statuses.remove(resourceID);
+            responders.remove(resourceID);
+            version.incrementAndGet();
+            return true;
+        }
+        synchronized (this) {
+            int row = storedRow(resourceID);
+            if (row < 0) {
+                return false;
+            }
+            int[] updated = Arrays.copyOf(tombstones, tombstones.length + 1);
+            updated[updated.length - 1] = row;
+            Arrays.sort(updated);
+            tombstones = updated;
+            metrics.unregister(store.get(row));
+            statuses.remove(resourceID);
+            responders.remove(resourceID);
+            store.unpin(row);
+            version.incrementAndGet();
+            return true;
+        }
+    }
+
+    void upsertQuietly(T resource) {
+        delete(resource.getResourceID());
+        insert(resource);
+    }
+
+    void removeQuietly(String resourceID) {
+        delete(resourceID);
+    }
+
+    void markDirty(CityResource resource) {
+        if (resources.containsKey(resource.getResourceID())) {
+            dirtyResources.put(resource.getResourceID(), resource);
+            return;
+        }
+        int row = storedRow(resource.getResourceID());
+        if (row >= 0) {
+            store.pin(row, resource);
+            dirtyResources.put(resource.getResourceID(), resource);
+        }
+    }
+
+    List<CityResource> drainDirty() {
+        ArrayList<CityResource> drained = new ArrayList<>(dirtyResources.size());
+        for (Iterator<CityResource> it = dirtyResources.values().iterator(); it.hasNext();) {
+            CityResource resource = it.next();
+            it.remove();
+            resource.clearDirty();
+            drained.add(resource);
+        }
+        return drained;
+    }
+
+    Map<CityResource, Integer> pendingChanges() {
+        Map<CityResource, Integer> pending = new LinkedHashMap<>();
+        for (CityResource resource : dirtyResources.values()) {
+            pending.put(resource, resource.getRevision());
+        }
+        return pending;
+    }
+
+    void changesSaved(Map<CityResource, Integer> saved) {
+        for (Map.Entry<CityResource, Integer> entry : saved.entrySet()) {
+            CityResource resource = entry.getKey();
+            if (dirtyResources.remove(resource.getResourceID(), resource) && !resource.clearDirty(entry.getValue())) {
+                dirtyResources.putIfAbsent(resource.getResourceID(), resource);
+            }
+        }
+    }
+
+    List<String> pendingRemovals() {
+        return new ArrayList<>(removedSinceSave);
+    }
+
+    void removalsSaved(List<String> saved) {
+        for (String resourceID : saved) {
+            removedSinceSave.remove(resourceID);
+        }
+    }
+
+    List<String> drainRemoved() {
+        ArrayList<String> drained = new ArrayList<>(removedSinceSave.size());
+        for (Iterator<String> it = removedSinceSave.iterator(); it.hasNext();) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+
+    public int getPendingChangeCount() {
+        return dirtyResources.size() + removedSinceSave.size();
+    }
+
+    void statusChanged(CityResource resource) {
+        statuses.update(resource.getResourceID(), resource.getStatus());
+        if (responders.statusChanged(resource)) {
+            dispatcher.responderAvailable();
+        }
+        if (!listeners.isEmpty() && contains(resource.getResourceID())) {
+            for (RepositoryListener listener : listeners) {
+                listener.statusChanged(resource);
+            }
+        }
+    }
+
+    void resourceMoved(CityResource resource, double oldLatitude, double oldLongitude) {
+        responders.moved(resource);
+        if (!listeners.isEmpty() && contains(resource.getResourceID())) {
+            for (RepositoryListener listener : listeners) {
+                listener.resourceMoved(resource, oldLatitude, oldLongitude);
+            }
+        }
+    }
+
+    public void addListener(RepositoryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(RepositoryListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean contains(String resourceID) {
+        return resources.containsKey(resourceID) || storedRow(resourceID) >= 0;
+    }
+
+    public int size() {
+        MappedResourceStore mapped = store;
+        return resources.size() + (mapped == null ? 0 : mapped.size() - tombstones.length);
+    }
+
+    public CityMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ResponderIndex getResponders() {
+        return responders;
+    }
+
+    public DispatchEngine getDispatcher() {
+        return dispatcher;
+    }
+
+    public Lock getCommitLock() {
+        return commitLock.readLock();
+    }
+
+    <V> V capture(Capture<V> capture) throws IOException {
+        Lock lock = commitLock.writeLock();
+        lock.lock();
+        try {
+            return capture.capture();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public TimingWheel getTimers() {
+        return timers;
+    }
+
+    public void setTimers(TimingWheel timers) {
+        this.timers = timers;
+    }
+
+    public StatusIndex getStatusIndex() {
+        return statuses;
+    }
+
+    public <S extends CityResource> List<S> withStatus(Class<S> type, ResourceStatus status) {
+        return resolve(type, statuses.ids(type.getSimpleName(), status));
+    }
+
+    public List<EmergencyService> withStatus(String serviceType, ResourceStatus status) {
+        return resolve(EmergencyService.class, statuses.ids(serviceType, status));
+    }
+
+    private <S extends CityResource> List<S> resolve(Class<S> type, List<String> ids) {
+        List<S> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            T resource = get(id);
+            if (type.isInstance(resource)) {
+                result.add(type.cast(resource));
             }
         }
+        return result;
+    }
+
+    public boolean isMapped() {
+        return store != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void openMapped(String filename) throws IOException {
+        MappedResourceStore opened = MappedResourceStore.open(filename, metrics);
+        beginLoad();
+        opened.seedMetrics();
+        store = opened;
+        opened.seedStatuses(statuses);
+        for (EmergencyService service : snapshotOfType(EmergencyService.class)) {
+            responders.add(service);
+        }
+        version.incrementAndGet();
+        DeltaSegmentStore.applySegments(filename, (CityRepository<CityResource>) this);
+        drainDirty();
+        drainRemoved();
+    }
+
+    private int storedRow(String resourceID) {
+        MappedResourceStore mapped = store;
+        if (mapped == null) {
+            return -1;
+        }
+        int row = mapped.indexOf(resourceID);
+        return row < 0 || Arrays.binarySearch(tombstones, row) >= 0 ? -1 : row;
+    }
+
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    public long getVersion() {
+        return version.get();
     }
 
     public ArrayList<T> getAll() {
-        return new ArrayList<>(resources);
+        return new ArrayList<>(snapshot());
     }
 
-    public void saveToFile(String filename) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(resources.toArray(new CityResource[0]));
+    public <S extends CityResource> ArrayList<S> getAllOfType(Class<S> type) {
+        return new ArrayList<>(snapshotOfType(type));
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<T> snapshot() {
+        long current = version.get();
+        Snapshot<T> cached = snapshot;
+        if (cached != null && cached.version == current) {
+            return cached.items;
+        }
+        List<T> items = Collections.unmodifiableList(
+                concurrent ? (List<T>) collectOfType(CityResource.class) : inOrder());
+        MappedResourceStore mapped = store;
+        if (mapped != null) {
+            items = (List<T>) mapped.view(CityResource.class, tombstones, (List<CityResource>) items);
         }
+        snapshot = new Snapshot<>(current, items);
+        return items;
     }
 
     @SuppressWarnings("unchecked")
+    public <S extends CityResource> List<S> snapshotOfType(Class<S> type) {
+        long current = version.get();
+        Snapshot<S> cached = (Snapshot<S>) typeSnapshots.get(type);
+        if (cached != null && cached.version == current) {
+            return cached.items;
+        }
+        List<S> items = Collections.unmodifiableList(collectOfType(type));
+        MappedResourceStore mapped = store;
+        if (mapped != null) {
+            items = mapped.view(type, tombstones, items);
+        }
+        typeSnapshots.put(type, new Snapshot<>(current, items));
+        return items;
+    }
+
+    public void forEachRow(RowVisitor visitor) {
+        MappedResourceStore mapped = store;
+        List<? extends CityResource> heap;
+        if (mapped == null) {
+            heap = snapshot();
+        } else {
+            mapped.forEachRow(tombstones, visitor);
+            heap = concurrent ? collectOfType(CityResource.class) : inOrder();
+        }
+        for (CityResource resource : heap) {
+            visitor.visit(resource.getResourceID(), resource.getClass(), resource.getStatus(),
+                    resource.getLatitude(), resource.getLongitude());
+        }
+    }
+
+    private ArrayList<T> inOrder() {
+        ArrayList<T> items = new ArrayList<>(resources.size());
+        for (Slot<T> slot : resources.values()) {
+            items.add(slot.resource);
+        }
+        return items;
+    }
+
+    private <S extends CityResource> ArrayList<S> collectOfType(Class<S> type) {
+        List<Iterator<Slot<T>>> runs = new ArrayList<>();
+        List<Slot<T>> heads = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<Class<?>, Map<Long, Slot<T>>> bucket : resourcesByType.entrySet()) {
+            if (type.isAssignableFrom(bucket.getKey())) {
+                Iterator<Slot<T>> run = bucket.getValue().values().iterator();
+                if (run.hasNext()) {
+                    runs.add(run);
+                    heads.add(run.next());
+                    total += bucket.getValue().size();
+                }
+            }
+        }
+        ArrayList<S> matches = new ArrayList<>(total);
+        while (!heads.isEmpty()) {
+            int first = 0;
+            for (int r = 1; r < heads.size(); r++) {
+                if (heads.get(r).sequence < heads.get(first).sequence) {
+                    first = r;
+                }
+            }
+            matches.add(type.cast(heads.get(first).resource));
+            Iterator<Slot<T>> run = runs.get(first);
+            if (run.hasNext()) {
+                heads.set(first, run.next());
+            } else {
+                runs.remove(first);
+                heads.remove(first);
+            }
+        }
+        return matches;
+    }
+
+    private Map<Long, Slot<T>> typeBucket(Class<?> type) {
+        return resourcesByType.computeIfAbsent(type,
+                k -> concurrent ? new ConcurrentSkipListMap<>() : new LinkedHashMap<>());
+    }
+
+    public void saveToFile(String filename) throws IOException {
+        saveToFile(filename, null);
+    }
+
+    public void saveToFile(String filename, ProgressListener progress) throws IOException {
+        synchronized (DeltaSegmentStore.lockFor(filename)) {
+            Map<CityResource, Integer> changed = new LinkedHashMap<>();
+            List<String> removed = new ArrayList<>();
+            List<CityResource> frozen = capture(() -> {
+                changed.putAll(pendingChanges());
+                removed.addAll(pendingRemovals());
+                return CityDataFile.freeze(snapshot());
+            });
+            CityDataFile.writeFrozen(filename, frozen, progress);
+            DeltaSegmentStore.discardSegments(filename);
+            changesSaved(changed);
+            removalsSaved(removed);
+        }
+    }
+
     public void loadFromFile(String filename) throws IOException, ClassNotFoundException {
+        loadInBatches(filename, Integer.MAX_VALUE, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public int loadInBatches(String filename, int batchSize, ProgressListener progress)
+            throws IOException, ClassNotFoundException {
         File file = new File(filename);
         if (!file.exists()) {
             throw new IOException("File does not exist: " + filename);
         }
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            CityResource[] loadedArray = (CityResource[]) ois.readObject();
-            resources.clear();
-            resourceIDs.clear();
-            CityResource.resetMetrics();
-            PowerStation.resetEnergyMetrics();
-            EmergencyService.resetEmergencyMetrics();
-            for (CityResource resource : loadedArray) {
-                resources.add((T) resource);
-                resourceIDs.add(resource.getResourceID());
-                if (resource instanceof PowerStation) {
-                    PowerStation ps = (PowerStation) resource;
-                    for (Consumer c : ps.getConnectedConsumers()) {
-                        PowerStation.addToTotalEnergyConsumed(c.getConsumption());
+        synchronized (DeltaSegmentStore.lockFor(filename)) {
+            beginLoad();
+            try {
+                streamResources(file, batchSize, progress);
+                DeltaSegmentStore.applySegments(filename, (CityRepository<CityResource>) this);
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                beginLoad();
+                throw e;
+            }
+            drainDirty();
+            drainRemoved();
+            if (progress != null) {
+                progress.progress(size(), size());
+            }
+            return size();
+        }
+    }
+
+    private void streamResources(File file, int batchSize, ProgressListener progress)
+            throws IOException, ClassNotFoundException {
+        String filename = file.getPath();
+        if (CityDataFile.isCityDataFile(filename)) {
+            List<CityDataFile.Section> sections = CityDataFile.open(filename).sections;
+            long total = 0;
+            for (CityDataFile.Section section : sections) {
+                total += section.rows;
+            }
+            long loaded = 0;
+            for (CityDataFile.Section section : sections) {
+                for (int row = 0; row < section.rows; row++) {
+                    loadResource(section.materialize(row));
+                    if (++loaded % batchSize == 0 && progress != null) {
+                        progress.progress(loaded, total);
                     }
-                } else if (resource instanceof TransportUnit) {
-                    TransportUnit tu = (TransportUnit) resource;
-                    CityResource.totalPassengers += tu.getCurrentPassengers();
                 }
             }
-            CityResource.totalResources = resources.size();
-            CityResource.totalEnergyUsage = PowerStation.getTotalEnergyConsumed();
+        } else {
+            CityResource[] loadedArray;
+            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+                loadedArray = (CityResource[]) ois.readObject();
+            }
+            for (int i = 0; i < loadedArray.length; i++) {
+                loadResource(loadedArray[i]);
+                if ((i + 1) % batchSize == 0 && progress != null) {
+                    progress.progress(i + 1, loadedArray.length);
+                }
+            }
+        }
+    }
+
+    private void beginLoad() {
+        for (Slot<T> slot : resources.values()) {
+            metrics.detach(slot.resource);
+        }
+        MappedResourceStore mapped = store;
+        if (mapped != null) {
+            mapped.detachAll();
+        }
+        resources.clear();
+        resourcesByType.clear();
+        store = null;
+        tombstones = new int[0];
+        metrics.reset();
+        responders.clear();
+        dispatcher.clear();
+        statuses.clear();
+        version.incrementAndGet();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadResource(CityResource resource) {
+        insert((T) resource);
+    }
+
+    private static final class Snapshot<T> {
+        private final long version;
+        private final List<T> items;
+
+        Snapshot(long version, List<T> items) {
+            this.version = version;
+            this.items = items;
+        }
+    }
+
+    private Object writeReplace() {
+        return new SerializedForm(concurrent, snapshot().toArray(new CityResource[0]));
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("CityRepository is deserialized through its serialized form");
+    }
+
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = 1941305537978736861L;
+        private final boolean concurrent;
+        private final CityResource[] resources;
+
+        SerializedForm(boolean concurrent, CityResource[] resources) {
+            this.concurrent = concurrent;
+            this.resources = resources;
+        }
+
+        private Object readResolve() {
+            CityRepository<CityResource> repository = new CityRepository<>(concurrent);
+            for (CityResource resource : resources) {
+                repository.insert(resource);
+            }
+            return repository;
+        }
+    }
+
+    private static final class Slot<T> {
+        private final long sequence;
+        private final T resource;
+
+        Slot(long sequence, T resource) {
+            this.sequence = sequence;
+            this.resource = resource;
         }
     }
-}
\ No newline at end of file
+}
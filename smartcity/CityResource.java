@@ -1,31 +1,60 @@
 package smartcity;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 public abstract class CityResource implements Reportable, Serializable {
     private static final long serialVersionUID = 1941305537978736861L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("resourceID", String.class),
+            new ObjectStreamField("location", String.class),
+            new ObjectStreamField("status", String.class),
+            new ObjectStreamField("lastUpdated", LocalDateTime.class),
+            new ObjectStreamField("latitude", double.class),
+            new ObjectStreamField("longitude", double.class) };
+    static final long MILLIS_PER_MINUTE = 100;
     protected String resourceID;
     protected String location;
-    protected String status;
-    protected LocalDateTime lastUpdated;
-
-    protected static int totalResources = 0;
-    protected static double totalMaintenanceCost = 0.0;
-    protected static int totalPassengers = 0;
-    protected static double totalEnergyUsage = 0.0;
+    protected volatile ResourceStatus status;
+    protected volatile LocalDateTime lastUpdated;
+    protected volatile double latitude;
+    protected volatile double longitude;
+    private transient volatile boolean dirty;
+    private transient int revision;
+    transient volatile CityMetrics metrics;
+    private transient double maintenanceCost;
+    private transient boolean maintenanceCostKnown;
+    private transient StatusTransition pendingStatus;
 
     protected static CityRepository<CityResource> repository;
 
-    public CityResource(String resourceID, String location, String status) {
+    protected CityResource(String resourceID, String location, String status, Set<ResourceStatus> supported) {
         this.resourceID = resourceID;
         this.location = location;
-        this.status = status;
+        this.status = ResourceStatus.parse(status, supported);
         this.lastUpdated = LocalDateTime.now();
-        totalResources++;
+        this.latitude = CityGeography.defaultLatitude(location, resourceID);
+        this.longitude = CityGeography.defaultLongitude(location, resourceID);
+    }
+
+    public final synchronized double calculateMaintenanceCost() {
+        if (!maintenanceCostKnown) {
+            maintenanceCost = computeMaintenanceCost();
+            maintenanceCostKnown = true;
+        }
+        return maintenanceCost;
     }
 
-    public abstract double calculateMaintenanceCost();
+    protected abstract double computeMaintenanceCost();
+
+    public abstract Set<ResourceStatus> getSupportedStatuses();
 
     @Override
     public String toString() {
@@ -41,39 +70,235 @@ public abstract class CityResource implements Reportable, Serializable {
         return location;
     }
 
-    public String getStatus() {
+    public ResourceStatus getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
-        this.status = status;
+    public boolean canTransitionTo(ResourceStatus next) {
+        return getSupportedStatuses().contains(next) && status.canTransitionTo(next);
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setCoordinates(double latitude, double longitude) {
+        double oldLatitude;
+        double oldLongitude;
+        synchronized (this) {
+            oldLatitude = this.latitude;
+            oldLongitude = this.longitude;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
         this.lastUpdated = LocalDateTime.now();
+        markDirty();
+        if (repository != null) {
+            repository.resourceMoved(this, oldLatitude, oldLongitude);
+        }
+    }
+
+    public void setLocation(String location) {
+        String previous;
+        synchronized (this) {
+            previous = this.location;
+            this.location = location;
+            CityMetrics m = metrics;
+            if (m != null) {
+                m.relocate(this, previous, location);
+            }
+        }
+        this.lastUpdated = LocalDateTime.now();
+        markDirty();
+        if (!location.equals(previous)) {
+            setCoordinates(CityGeography.defaultLatitude(location, resourceID),
+                    CityGeography.defaultLongitude(location, resourceID));
+        }
+    }
+
+    public void setStatus(ResourceStatus status) {
+        if (!trySetStatus(status)) {
+            throw new IllegalStateException(getClass().getSimpleName() + " " + resourceID + " cannot change from "
+                    + this.status + " to " + status);
+        }
+    }
+
+    public boolean trySetStatus(ResourceStatus status) {
+        return trySetStatus(null, status);
+    }
+
+    public boolean trySetStatus(ResourceStatus expected, ResourceStatus status) {
+        synchronized (this) {
+            if (expected != null && this.status != expected || !canTransitionTo(status)) {
+                return false;
+            }
+            cancelScheduledStatus();
+            this.status = status;
+            this.lastUpdated = LocalDateTime.now();
+        }
+        statusChanged();
+        return true;
+    }
+
+    protected synchronized void scheduleStatus(ResourceStatus status, long minutes, CityEvent.Type type,
+            String message) {
+        cancelScheduledStatus();
+        StatusTransition transition = new StatusTransition(status, type, message);
+        pendingStatus = transition;
+        TimingWheel timers = repository == null ? TimingWheel.shared() : repository.getTimers();
+        transition.timeout = timers.schedule(minutes * MILLIS_PER_MINUTE, TimeUnit.MILLISECONDS, transition);
+    }
+
+    public synchronized ResourceStatus getScheduledStatus() {
+        return pendingStatus == null ? null : pendingStatus.status;
+    }
+
+    private synchronized void cancelScheduledStatus() {
+        if (pendingStatus != null) {
+            pendingStatus.timeout.cancel();
+            pendingStatus = null;
+        }
+    }
+
+    void restoreStatus(ResourceStatus status, LocalDateTime updated) {
+        synchronized (this) {
+            cancelScheduledStatus();
+            this.status = status;
+            this.lastUpdated = updated;
+        }
+        if (repository != null) {
+            repository.statusChanged(this);
+        }
+    }
+
+    private void statusChanged() {
+        markDirty();
+        if (repository != null) {
+            repository.statusChanged(this);
+        }
+        if (CityEvents.hasSubscribers()) {
+            CityEvents.publish(CityEvent.Type.STATUS_CHANGE, resourceID, resourceID + " status changed to " + status);
+        }
+    }
+
+    protected void markDirty() {
+        boolean first;
+        synchronized (this) {
+            revision++;
+            first = !dirty;
+            dirty = true;
+        }
+        if (first && repository != null) {
+            repository.markDirty(this);
+        }
+    }
+
+    protected synchronized void maintenanceInputsChanged() {
+        double previous = calculateMaintenanceCost();
+        maintenanceCost = computeMaintenanceCost();
+        CityMetrics m = metrics;
+        if (m != null && maintenanceCost != previous) {
+            m.maintenanceCostChanged(this, maintenanceCost - previous);
+        }
+    }
+
+    public boolean isDirty() {
+        return dirty;
     }
 
-    public static int getTotalResources() {
-        return totalResources;
+    synchronized int getRevision() {
+        return revision;
     }
 
-    public static double getTotalMaintenanceCost() {
-        return totalMaintenanceCost;
+    synchronized void clearDirty() {
+        dirty = false;
     }
 
-    public static int getTotalPassengers() {
-        return totalPassengers;
+    synchronized boolean clearDirty(int savedRevision) {
+        if (revision != savedRevision) {
+            return false;
+        }
+        dirty = false;
+        return true;
     }
 
-    public static double getTotalEnergyUsage() {
-        return totalEnergyUsage;
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("resourceID", resourceID);
+        fields.put("location", location);
+        fields.put("status", status.getLabel());
+        fields.put("lastUpdated", lastUpdated);
+        fields.put("latitude", latitude);
+        fields.put("longitude", longitude);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        resourceID = (String) fields.get("resourceID", null);
+        location = (String) fields.get("location", null);
+        status = ResourceStatus.parse((String) fields.get("status", null), getSupportedStatuses());
+        lastUpdated = (LocalDateTime) fields.get("lastUpdated", null);
+        latitude = fields.get("latitude", 0.0);
+        longitude = fields.get("longitude", 0.0);
+        if (latitude == 0.0 && longitude == 0.0) {
+            latitude = CityGeography.defaultLatitude(location, resourceID);
+            longitude = CityGeography.defaultLongitude(location, resourceID);
+        }
     }
 
     public static void setRepository(CityRepository<CityResource> repo) {
         repository = repo;
     }
 
-    public static void resetMetrics() {
-        totalResources = 0;
-        totalMaintenanceCost = 0.0;
-        totalPassengers = 0;
-        totalEnergyUsage = 0.0;
+    private final class StatusTransition implements Runnable {
+        private final ResourceStatus status;
+        private final CityEvent.Type type;
+        private final String message;
+        private TimingWheel.Timeout timeout;
+
+        StatusTransition(ResourceStatus status, CityEvent.Type type, String message) {
+            this.status = status;
+            this.type = type;
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
+            CityRepository<CityResource> repo = repository;
+            Lock lock = repo == null ? null : repo.getCommitLock();
+            if (lock != null) {
+                lock.lock();
+            }
+            try {
+                apply();
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private void apply() {
+            synchronized (CityResource.this) {
+                if (pendingStatus != this) {
+                    return;
+                }
+                pendingStatus = null;
+                if (!canTransitionTo(status)) {
+                    return;
+                }
+                CityResource.this.status = status;
+                lastUpdated = LocalDateTime.now();
+            }
+            statusChanged();
+            if (message != null) {
+                CityEvents.publish(type, resourceID, message);
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,324 @@
+package smartcity;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+public class CitySimulation {
+    static final int REAL_TIME_PERIOD = 5;
+    static final int TRAFFIC_PERIOD = 7;
+    static final int EMERGENCY_PERIOD = 30;
+    static final double CASCADE_TOLERANCE = 1.0;
+    static final long TIMER_TICK_MILLIS = 10;
+
+    private final CityRepository<CityResource> repository;
+    private final TickEngine engine;
+    private final TimingWheel timers;
+    private final SplittableRandom scenarioRandom;
+
+    public CitySimulation(CityRepository<CityResource> repository, TickEngine engine) {
+        this(repository, engine, repository.getTimers());
+    }
+
+    public CitySimulation(CityRepository<CityResource> repository, TickEngine engine, TimingWheel timers) {
+        this.repository = repository;
+        this.engine = engine;
+        this.timers = timers;
+        engine.setCommitLock(repository.getCommitLock());
+        this.scenarioRandom = new SplittableRandom(engine.getSeed()).split();
+    }
+
+    public void schedule(SimulationScheduler scheduler, Runnable afterTick) {
+        scheduler.schedule("real-time updates", REAL_TIME_PERIOD, TimeUnit.SECONDS, () -> {
+            realTimeTick();
+            afterTick.run();
+        });
+        scheduler.schedule("traffic", TRAFFIC_PERIOD, TimeUnit.SECONDS, () -> {
+            trafficTick();
+            afterTick.run();
+        });
+        scheduler.schedule("emergency scenarios", EMERGENCY_PERIOD, TimeUnit.SECONDS, () -> {
+            emergencyScenario();
+            afterTick.run();
+        });
+    }
+
+    public void step(long second) {
+        timers.advanceTo(second, TimeUnit.SECONDS);
+        if (second % REAL_TIME_PERIOD == 0) {
+            realTimeTick();
+        }
+        if (second % TRAFFIC_PERIOD == 0) {
+            trafficTick();
+        }
+        if (second % EMERGENCY_PERIOD == 0) {
+            emergencyScenario();
+        }
+    }
+
+    public int realTimeTick() {
+        return engine.tick(repository.snapshot(), CitySimulation::realTimeUpdate);
+    }
+
+    public int trafficTick() {
+        return engine.tick(repository.snapshotOfType(TransportUnit.class), CitySimulation::trafficUpdate);
+    }
+
+    public synchronized void emergencyScenario() {
+        Lock lock = repository.getCommitLock();
+        lock.lock();
+        try {
+            injectEmergency();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void injectEmergency() {
+        List<CityResource> allResources = repository.snapshot();
+        if (allResources.isEmpty()) {
+            return;
+        }
+        CityResource randomResource = allResources.get(scenarioRandom.nextInt(allResources.size()));
+        if (randomResource instanceof PowerStation && scenarioRandom.nextDouble() < 0.3
+                && randomResource.canTransitionTo(ResourceStatus.OUTAGE)) {
+            PowerStation power = (PowerStation) randomResource;
+            power.simulateOutage();
+            CityEvents.publish(CityEvent.Type.ALERT, power.getResourceID(),
+                    "EMERGENCY SCENARIO: Power outage at " + power.getLocation());
+        } else if (randomResource instanceof TransportUnit && scenarioRandom.nextDouble() < 0.2
+                && randomResource.trySetStatus(ResourceStatus.EMERGENCY)) {
+            TransportUnit transport = (TransportUnit) randomResource;
+            CityEvents.publish(CityEvent.Type.ALERT, transport.getResourceID(),
+                    "TRANSPORT EMERGENCY: " + transport.getResourceID() + " at " + transport.getLocation());
+            repository.getDispatcher().submit(null, DispatchEngine.Severity.CRITICAL, transport.getLatitude(),
+                    transport.getLongitude(), transport.getResourceID(), "Transport emergency response needed");
+        }
+    }
+
+    static TickEngine.Change trafficUpdate(TransportUnit unit, SplittableRandom random) {
+        int change = random.nextInt(11) - 5;
+        return () -> unit.adjustRouteBasedOnTraffic(change);
+    }
+
+    static TickEngine.Change realTimeUpdate(CityResource resource, SplittableRandom random) {
+        if (resource instanceof PowerStation) {
+            PowerStation power = (PowerStation) resource;
+            if (random.nextDouble() < 0.05 && power.getStatus() == ResourceStatus.OPERATIONAL) {
+                return () -> {
+                    if (power.beginMaintenance(PowerStation.MAINTENANCE_MINUTES)) {
+                        CityEvents.publish(CityEvent.Type.ALERT, power.getResourceID(),
+                                "POWER ALERT: " + power.getResourceID() + " requires maintenance");
+                    }
+                };
+            }
+        }
+        if (resource instanceof EmergencyService) {
+            EmergencyService emergency = (EmergencyService) resource;
+            if (random.nextDouble() < 0.08 && emergency.getStatus() == ResourceStatus.AVAILABLE) {
+                return () -> emergency.sendEmergencyAlert("Routine patrol dispatch");
+            }
+        }
+        return null;
+    }
+
+    static void populate(CityRepository<CityResource> repository, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int zones = Math.max(1, count / 1000);
+        for (int i = 0; i < count; i++) {
+            String zone = "Zone-" + random.nextInt(zones);
+            double kind = random.nextDouble();
+            if (kind < 0.8) {
+                boolean bus = random.nextBoolean();
+                TransportUnit unit = new TransportUnit(String.format("TU%07d", i), zone, "Active",
+                        bus ? "Bus" : "Train", bus ? 50 : 200, bus ? 15.5 : 25.0);
+                unit.setCurrentPassengers(random.nextInt(unit.getPassengerCapacity() + 1));
+                repository.add(unit);
+            } else if (kind < 0.9) {
+                boolean solar = random.nextBoolean();
+                PowerStation station = new PowerStation(String.format("PS%07d", i), zone, "Operational",
+                        solar ? 500.0 : 1000.0, solar ? "Solar" : "Nuclear");
+                station.addConsumer(new Consumer("C" + i, "Residential", 50.0 + random.nextInt(150)));
+                repository.add(station);
+            } else {
+                boolean fire = random.nextBoolean();
+                repository.add(new EmergencyService(String.format("ES%07d", i), zone, "Available",
+                        fire ? "Fire" : "Police", 4 + random.nextInt(5), 0));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long seed = 42;
+        double tickRate = 0;
+        long duration = 3600;
+        String dataFile = null;
+        int units = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean verbose = false;
+        boolean mapped = false;
+        boolean checkDeterminism = false;
+        String logFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--tick-rate" -> tickRate = Double.parseDouble(args[++i]);
+                case "--duration" -> duration = Long.parseLong(args[++i]);
+                case "--data" -> dataFile = args[++i];
+                case "--units" -> units = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--verbose" -> verbose = true;
+                case "--mapped" -> mapped = true;
+                case "--log" -> logFile = args[++i];
+                case "--check-determinism" -> checkDeterminism = true;
+                default -> {
+                    System.err.println("Usage: CitySimulation [--seed N] [--tick-rate SIM_SECONDS_PER_SECOND]"
+                            + " [--duration SIM_SECONDS] [--data FILE [--mapped]] [--units N] [--threads N]"
+                            + " [--log FILE] [--verbose] [--check-determinism]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        if (!checkDeterminism) {
+            run(seed, tickRate, duration, dataFile, mapped, units, threads, logFile, verbose);
+            return;
+        }
+        long first = run(seed, tickRate, duration, dataFile, mapped, units, threads, logFile, verbose);
+        long second = run(seed, tickRate, duration, dataFile, mapped, units, threads, logFile, verbose);
+        System.out.printf("Determinism check: seed %d %s (%016x / %016x)%n", seed,
+                first == second ? "reproduced" : "DIVERGED", first, second);
+        if (first != second) {
+            System.exit(1);
+        }
+    }
+
+    static long run(long seed, double tickRate, long duration, String dataFile, boolean mapped, int units,
+            int threads, String logFile, boolean verbose) throws Exception {
+        CityRepository<CityResource> repository = new CityRepository<>(true);
+        CityResource.setRepository(repository);
+        long loadStart = System.nanoTime();
+        if (dataFile != null && new File(dataFile).exists()) {
+            if (mapped && CityDataFile.isCityDataFile(dataFile)) {
+                repository.openMapped(dataFile);
+            } else {
+                repository.loadFromFile(dataFile);
+            }
+        } else {
+            populate(repository, units, seed);
+        }
+        double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+        SmartGrid grid = new SmartGrid("City");
+        for (PowerStation station : repository.snapshotOfType(PowerStation.class)) {
+            grid.addPowerStation(station);
+        }
+        repository.addListener(grid);
+
+        Map<CityEvent.Type, LongAdder> events = new EnumMap<>(CityEvent.Type.class);
+        for (CityEvent.Type type : CityEvent.Type.values()) {
+            events.put(type, new LongAdder());
+        }
+        boolean printEvents = verbose;
+        List<CityEvents.Subscription> subscriptions = new ArrayList<>();
+        subscriptions.add(CityEvents.subscribe("metrics", batch -> {
+            for (CityEvent event : batch) {
+                events.get(event.getType()).increment();
+                if (printEvents) {
+                    System.out.println(event);
+                }
+            }
+        }));
+        CityEventFileLogger logger = logFile == null ? null : new CityEventFileLogger(logFile);
+        if (logger != null) {
+            subscriptions.add(CityEvents.subscribe("file-log", logger));
+        }
+
+        TimingWheel timers = new TimingWheel("simulation-timers", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, true);
+        repository.setTimers(timers);
+        TickEngine engine = new TickEngine(seed, threads);
+        CitySimulation simulation = new CitySimulation(repository, engine, timers);
+        long start = System.nanoTime();
+        for (long second = 0; second < duration; second++) {
+            simulation.step(second);
+            if (tickRate > 0) {
+                long due = start + (long) ((second + 1) / tickRate * 1e9);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+        }
+        timers.advanceTo(duration, TimeUnit.SECONDS);
+        double wallSeconds = (System.nanoTime() - start) / 1e9;
+        engine.shutdown();
+        long dropped = 0;
+        for (CityEvents.Subscription subscription : subscriptions) {
+            subscription.close();
+            dropped += subscription.getDropped();
+        }
+        long counted = subscriptions.get(0).getDropped();
+        for (LongAdder count : events.values()) {
+            counted += count.sum();
+        }
+        if (logger != null) {
+            logger.close();
+        }
+
+        CityMetrics.Snapshot metrics = repository.getMetrics().snapshot();
+        System.out.printf("Resources: %d (%s in %.2f s)%n", repository.size(),
+                repository.isMapped() ? "mapped" : "loaded", loadSeconds);
+        System.out.printf("Seed: %d | Threads: %d | Simulated: %d s in %.2f s wall (%.1fx real time)%n", seed,
+                engine.getParallelism(), duration, wallSeconds, duration / Math.max(wallSeconds, 1e-9));
+        System.out.printf("Ticks: %d | Resource updates: %d (%.0f/s) | Committed changes: %d%n",
+                engine.getTickCount(), engine.getProcessedCount(),
+                engine.getProcessedCount() / Math.max(wallSeconds, 1e-9), engine.getCommittedCount());
+        System.out.printf("Events: %s | Dropped: %d%n", events, dropped);
+        System.out.printf("Passengers: %d | Energy: %.2f MW | Maintenance: $%.2f | Emergencies: %d%n",
+                metrics.getPassengers(), metrics.getEnergyConsumed(), metrics.getMaintenanceCost(),
+                metrics.getEmergencyResponses());
+        System.out.println(grid.generateLoadReport());
+        GridTopology topology = new GridTopology(grid);
+        System.out.println(topology);
+        for (GridTopology.CascadeResult cascade : topology.contingencyStudy(CASCADE_TOLERANCE, 1)) {
+            System.out.println(cascade.generateReport());
+        }
+        System.out.println(repository.getDispatcher());
+        System.out.println(timers);
+
+        long fingerprint = seed;
+        for (CityResource resource : repository.snapshot()) {
+            fingerprint = fingerprint * 31 + stateHash(resource);
+        }
+        fingerprint = fingerprint * 31 + Objects.hash(engine.getTickCount(), engine.getProcessedCount(),
+                engine.getCommittedCount(), metrics.getPassengers(), metrics.getEnergyConsumed(),
+                metrics.getMaintenanceCost(), metrics.getEmergencyResponses(), grid.generateLoadReport());
+        fingerprint = fingerprint * 31 + (subscriptions.get(0).getDropped() == 0 ? events.toString().hashCode()
+                : Long.hashCode(counted));
+        for (DispatchEngine.Severity severity : DispatchEngine.Severity.values()) {
+            fingerprint = fingerprint * 31 + Objects.hash(repository.getDispatcher().getDispatched(severity),
+                    repository.getDispatcher().getBreaches(severity));
+        }
+        return fingerprint * 31 + Objects.hash(timers.size(), timers.getScheduled(), timers.getFired());
+    }
+
+    private static int stateHash(CityResource resource) {
+        ResourceStatus scheduled = resource.getScheduledStatus();
+        int hash = Objects.hash(resource.getResourceID(), resource.getStatus().ordinal(),
+                scheduled == null ? -1 : scheduled.ordinal());
+        if (resource instanceof TransportUnit) {
+            hash = hash * 31 + ((TransportUnit) resource).getCurrentPassengers();
+        } else if (resource instanceof PowerStation) {
+            hash = hash * 31 + ((PowerStation) resource).getConnectedConsumers().size();
+        } else if (resource instanceof EmergencyService) {
+            hash = hash * 31 + ((EmergencyService) resource).getCallsHandled();
+        }
+        return hash;
+    }
+}
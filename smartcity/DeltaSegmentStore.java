@@ -0,0 +1,243 @@
+package smartcity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+public class DeltaSegmentStore {
+    private static final int MAGIC = 0x53434453;
+    private static final short VERSION = 1;
+    private static final String SEGMENT_INFIX = ".seg.";
+    private static final int MERGE_THRESHOLD = 8;
+    private static final int MERGES_PER_COMPACTION = 4;
+    private static final int COMPACT_RATIO = 4;
+    private static final Map<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final String dataFile;
+    private final CityRepository<CityResource> repository;
+    private final ExecutorService merger;
+    private volatile boolean mergeScheduled;
+    private int mergesSinceCompaction;
+
+    public DeltaSegmentStore(String dataFile, CityRepository<CityResource> repository) {
+        this.dataFile = dataFile;
+        this.repository = repository;
+        this.merger = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "segment-merger");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    static Object lockFor(String dataFile) {
+        return LOCKS.computeIfAbsent(Paths.get(dataFile).toAbsolutePath().normalize(), k -> new Object());
+    }
+
+    public int saveDelta() throws IOException {
+        return saveDelta(null);
+    }
+
+    public int saveDelta(ProgressListener progress) throws IOException {
+        int written;
+        synchronized (lockFor(dataFile)) {
+            if (!CityDataFile.isCityDataFile(dataFile)) {
+                repository.saveToFile(dataFile, progress);
+                return repository.size();
+            }
+            Map<CityResource, Integer> changed = new LinkedHashMap<>();
+            List<String> removed = new ArrayList<>();
+            Map<String, byte[]> records = repository.capture(() -> {
+                changed.putAll(repository.pendingChanges());
+                removed.addAll(repository.pendingRemovals());
+                Map<String, byte[]> encoded = new LinkedHashMap<>();
+                for (String resourceID : removed) {
+                    encoded.put(resourceID, null);
+                }
+                for (CityResource resource : changed.keySet()) {
+                    encoded.put(resource.getResourceID(), CityDataFile.encode(resource));
+                }
+                return encoded;
+            });
+            if (records.isEmpty()) {
+                return 0;
+            }
+            List<Path> segments = segments(dataFile);
+            long next = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+            writeSegment(segmentPath(dataFile, next), records);
+            repository.changesSaved(changed);
+            repository.removalsSaved(removed);
+            written = records.size();
+            if (progress != null) {
+                progress.progress(written, written);
+            }
+            if (segments.size() + 1 >= MERGE_THRESHOLD && !mergeScheduled) {
+                mergeScheduled = true;
+                merger.execute(this::mergeInBackground);
+            }
+        }
+        return written;
+    }
+
+    public void merge() throws IOException {
+        synchronized (lockFor(dataFile)) {
+            List<Path> segments = segments(dataFile);
+            if (segments.size() < 2) {
+                return;
+            }
+            Map<String, byte[]> merged = new LinkedHashMap<>();
+            for (Path segment : segments) {
+                merged.putAll(readSegment(segment));
+            }
+            Path last = segments.get(segments.size() - 1);
+            writeSegment(last, merged);
+            for (Path segment : segments.subList(0, segments.size() - 1)) {
+                Files.deleteIfExists(segment);
+            }
+            mergesSinceCompaction++;
+            if (mergesSinceCompaction >= MERGES_PER_COMPACTION
+                    || Files.size(last) * COMPACT_RATIO >= Files.size(Paths.get(dataFile))) {
+                compact();
+            }
+        }
+    }
+
+    public void compact() throws IOException {
+        synchronized (lockFor(dataFile)) {
+            repository.saveToFile(dataFile);
+            mergesSinceCompaction = 0;
+        }
+    }
+
+    public int getSegmentCount() throws IOException {
+        return segments(dataFile).size();
+    }
+
+    public void close() {
+        merger.shutdown();
+    }
+
+    private void mergeInBackground() {
+        try {
+            merge();
+        } catch (IOException e) {
+            CityEvents.publishFailure(null, "Merging segments of " + dataFile, e);
+        } finally {
+            mergeScheduled = false;
+        }
+    }
+
+    static void applySegments(String dataFile, CityRepository<CityResource> repository) throws IOException {
+        for (Path segment : segments(dataFile)) {
+            for (Map.Entry<String, byte[]> record : readSegment(segment).entrySet()) {
+                if (record.getValue() == null) {
+                    repository.removeQuietly(record.getKey());
+                } else {
+                    repository.upsertQuietly(CityDataFile.readRecord(
+                            new DataInputStream(new ByteArrayInputStream(record.getValue()))));
+                }
+            }
+        }
+    }
+
+    static void discardSegments(String dataFile) throws IOException {
+        for (Path segment : segments(dataFile)) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    private static void writeSegment(Path target, Map<String, byte[]> records) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(records.size());
+            for (Map.Entry<String, byte[]> record : records.entrySet()) {
+                if (record.getValue() == null) {
+                    out.writeBoolean(false);
+                    out.writeUTF(record.getKey());
+                } else {
+                    out.writeBoolean(true);
+                    out.writeInt(record.getValue().length);
+                    out.write(record.getValue());
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Map<String, byte[]> readSegment(Path segment) throws IOException {
+        Map<String, byte[]> records = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a delta segment: " + segment);
+            }
+            short version = in.readShort();
+            if (version > VERSION) {
+                throw new IOException("Unsupported delta segment version " + version + ": " + segment);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                if (in.readBoolean()) {
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    DataInputStream header = new DataInputStream(new ByteArrayInputStream(record));
+                    header.readByte();
+                    String resourceID = header.readUTF();
+                    records.remove(resourceID);
+                    records.put(resourceID, record);
+                } else {
+                    String resourceID = in.readUTF();
+                    records.remove(resourceID);
+                    records.put(resourceID, null);
+                }
+            }
+        }
+        return records;
+    }
+
+    private static List<Path> segments(String dataFile) throws IOException {
+        Path data = Paths.get(dataFile).toAbsolutePath();
+        String prefix = data.getFileName() + SEGMENT_INFIX;
+        ArrayList<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(data.getParent())) {
+            files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+");
+            }).forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+        return segments;
+    }
+
+    private static Path segmentPath(String dataFile, long number) {
+        Path data = Paths.get(dataFile).toAbsolutePath();
+        return data.resolveSibling(data.getFileName() + SEGMENT_INFIX + String.format("%08d", number));
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+    }
+}
@@ -0,0 +1,235 @@
+package smartcity;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public final class DispatchEngine {
+    private static final String ANY = "";
+    private static final Comparator<Incident> PRIORITY = Comparator
+            .comparing((Incident incident) -> incident.severity, Comparator.reverseOrder())
+            .thenComparingLong(incident -> incident.sequence);
+
+    public enum Severity {
+        LOW(30), MODERATE(15), HIGH(10), CRITICAL(8);
+
+        private final int targetMinutes;
+
+        Severity(int targetMinutes) {
+            this.targetMinutes = targetMinutes;
+        }
+
+        public long getTargetNanos() {
+            return TimeUnit.MILLISECONDS.toNanos(targetMinutes * CityResource.MILLIS_PER_MINUTE);
+        }
+    }
+
+    private final ResponderIndex responders;
+    private final Supplier<TimingWheel> timers;
+    private final Map<String, PriorityQueue<Incident>> queues = new HashMap<>();
+    private final Map<Severity, SeverityStats> stats = new EnumMap<>(Severity.class);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean pumpScheduled = new AtomicBoolean();
+    private final AtomicBoolean pumping = new AtomicBoolean();
+    private final AtomicBoolean pumpRequested = new AtomicBoolean();
+    private int queued;
+
+    DispatchEngine(ResponderIndex responders, Supplier<TimingWheel> timers) {
+        this.responders = responders;
+        this.timers = timers;
+        for (Severity severity : Severity.values()) {
+            stats.put(severity, new SeverityStats());
+        }
+    }
+
+    public Incident submit(String serviceType, Severity severity, double latitude, double longitude,
+            String resourceID, String description) {
+        Incident incident = new Incident(sequence.incrementAndGet(), serviceType, severity, latitude, longitude,
+                resourceID, description, timers.get().nanoTime());
+        synchronized (this) {
+            queues.computeIfAbsent(serviceType == null ? ANY : serviceType,
+                    _ -> new PriorityQueue<>(PRIORITY)).add(incident);
+            queued++;
+            stats.get(severity).submitted++;
+        }
+        pump();
+        return incident;
+    }
+
+    public void pump() {
+        pumpRequested.set(true);
+        while (pumpRequested.get() && pumping.compareAndSet(false, true)) {
+            try {
+                pumpRequested.set(false);
+                drain();
+            } finally {
+                pumping.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        Set<EmergencyService> refused = new HashSet<>();
+        while (true) {
+            PriorityQueue<Incident> from = null;
+            Incident incident = null;
+            synchronized (this) {
+                for (PriorityQueue<Incident> queue : queues.values()) {
+                    Incident head = queue.peek();
+                    if (head != null && responders.availableCount(head.serviceType) > 0
+                            && (incident == null || PRIORITY.compare(head, incident) < 0)) {
+                        from = queue;
+                        incident = head;
+                    }
+                }
+            }
+            if (incident == null) {
+                return;
+            }
+            EmergencyService unit = nearest(incident, refused);
+            if (unit == null) {
+                return;
+            }
+            if (!unit.dispatch(incident.description)) {
+                refused.add(unit);
+                continue;
+            }
+            synchronized (this) {
+                if (from.remove(incident)) {
+                    queued--;
+                }
+                stats.get(incident.severity).dispatched(timers.get().nanoTime() - incident.submittedNanos,
+                        TimeUnit.MILLISECONDS.toNanos(unit.getResponseTime() * CityResource.MILLIS_PER_MINUTE),
+                        incident.severity.getTargetNanos());
+            }
+        }
+    }
+
+    private EmergencyService nearest(Incident incident, Set<EmergencyService> refused) {
+        List<EmergencyService> units = responders.nearestAvailable(incident.serviceType, incident.latitude,
+                incident.longitude, refused.size() + 1);
+        for (EmergencyService unit : units) {
+            if (!refused.contains(unit)) {
+                return unit;
+            }
+        }
+        return null;
+    }
+
+    void responderAvailable() {
+        if (getQueued() > 0 && pumpScheduled.compareAndSet(false, true)) {
+            timers.get().schedule(0, TimeUnit.MILLISECONDS, () -> {
+                pumpScheduled.set(false);
+                pump();
+            });
+        }
+    }
+
+    synchronized void clear() {
+        queues.clear();
+        queued = 0;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized long getDispatched(Severity severity) {
+        return stats.get(severity).dispatched;
+    }
+
+    public synchronized long getBreaches(Severity severity) {
+        return stats.get(severity).breaches;
+    }
+
+    public synchronized double getAverageWaitMillis(Severity severity) {
+        return stats.get(severity).averageWaitMillis();
+    }
+
+    public synchronized double getMaxWaitMillis(Severity severity) {
+        return stats.get(severity).maxWaitNanos / 1_000_000.0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder("Dispatch: ").append(queued).append(" queued");
+        for (Severity severity : Severity.values()) {
+            SeverityStats s = stats.get(severity);
+            if (s.submitted > 0) {
+                report.append(String.format("%n- %s: %d/%d dispatched, avg wait %.1f ms, max %.1f ms, %d SLA breaches",
+                        severity, s.dispatched, s.submitted, s.averageWaitMillis(), s.maxWaitNanos / 1_000_000.0,
+                        s.breaches));
+            }
+        }
+        return report.toString();
+    }
+
+    public static final class Incident {
+        private final long sequence;
+        private final String serviceType;
+        private final Severity severity;
+        private final double latitude;
+        private final double longitude;
+        private final String resourceID;
+        private final String description;
+        private final long submittedNanos;
+
+        Incident(long sequence, String serviceType, Severity severity, double latitude, double longitude,
+                String resourceID, String description, long submittedNanos) {
+            this.sequence = sequence;
+            this.serviceType = serviceType;
+            this.severity = severity;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.resourceID = resourceID;
+            this.description = description;
+            this.submittedNanos = submittedNanos;
+        }
+
+        public String getServiceType() {
+            return serviceType;
+        }
+
+        public Severity getSeverity() {
+            return severity;
+        }
+
+        public String getResourceID() {
+            return resourceID;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final class SeverityStats {
+        long submitted;
+        long dispatched;
+        long breaches;
+        long totalWaitNanos;
+        long maxWaitNanos;
+
+        void dispatched(long waitNanos, long travelNanos, long targetNanos) {
+            dispatched++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            if (waitNanos + travelNanos > targetNanos) {
+                breaches++;
+            }
+        }
+
+        double averageWaitMillis() {
+            return dispatched == 0 ? 0.0 : totalWaitNanos / (dispatched * 1_000_000.0);
+        }
+    }
+}
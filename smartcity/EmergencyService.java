@@ -1,23 +1,22 @@
 package smartcity;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import javax.swing.Timer;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class EmergencyService extends CityResource implements Alertable {
     private static final long serialVersionUID = 1941305537978736861L;
+    static final Set<ResourceStatus> STATUSES = Collections.unmodifiableSet(EnumSet.of(ResourceStatus.AVAILABLE,
+            ResourceStatus.RESPONDING, ResourceStatus.MAINTENANCE, ResourceStatus.OFFLINE));
     private String serviceType;
     private int responseTime;
     private int callsHandled;
     private boolean onDuty;
 
-    private static int totalEmergencyResponses = 0;
-    private static double averageResponseTime = 0.0;
-
     public EmergencyService(String resourceID, String location, String status, String serviceType, int responseTime,
             int callsHandled) {
-        super(resourceID, location, status);
+        super(resourceID, location, status, STATUSES);
         this.serviceType = serviceType;
         this.responseTime = responseTime;
         this.callsHandled = callsHandled;
@@ -25,38 +24,44 @@ public class EmergencyService extends CityResource implements Alertable {
     }
 
     @Override
-    public double calculateMaintenanceCost() {
+    public Set<ResourceStatus> getSupportedStatuses() {
+        return STATUSES;
+    }
+
+    @Override
+    protected double computeMaintenanceCost() {
+        return maintenanceCost(serviceType, callsHandled);
+    }
+
+    static double maintenanceCost(String serviceType, int callsHandled) {
         double baseCost = serviceType.equals("Fire") ? 2000.0 : 1500.0;
         double equipmentCost = 500.0;
         double usageCost = callsHandled * 100.0;
-        double maintenanceCost = baseCost + equipmentCost + usageCost;
-        totalMaintenanceCost += maintenanceCost;
-        return maintenanceCost;
+        return baseCost + equipmentCost + usageCost;
     }
 
     @Override
     public void sendEmergencyAlert(String message) {
-        if (onDuty) {
-            setStatus("Responding");
-            totalEmergencyResponses++;
+        dispatch(message);
+    }
+
+    public boolean dispatch(String message) {
+        if (!onDuty || !trySetStatus(ResourceStatus.RESPONDING)) {
+            return false;
+        }
+        CityMetrics m = metrics;
+        if (m != null) {
+            m.emergencyResponded(this);
+        }
+        synchronized (this) {
             callsHandled++;
-            if (SmartCityGUI.getReportArea() != null) {
-                SmartCityGUI.getReportArea()
-                        .append("EMERGENCY DISPATCH [" + serviceType + " - " + resourceID + "]: " + message +
-                                " at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-            }
-
-            Timer timer = new Timer(responseTime * 100, e -> {
-                setStatus("Available");
-                if (SmartCityGUI.getReportArea() != null) {
-                    SmartCityGUI.getReportArea()
-                            .append(serviceType + " unit " + resourceID + " completed response at " +
-                                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
-            });
-            timer.setRepeats(false);
-            timer.start();
+            maintenanceInputsChanged();
         }
+        CityEvents.publish(CityEvent.Type.DISPATCH, resourceID,
+                "EMERGENCY DISPATCH [" + serviceType + " - " + resourceID + "]: " + message);
+        scheduleStatus(ResourceStatus.AVAILABLE, responseTime, CityEvent.Type.DISPATCH,
+                serviceType + " unit " + resourceID + " completed response");
+        return true;
     }
 
     @Override
@@ -68,7 +73,7 @@ public class EmergencyService extends CityResource implements Alertable {
     public String generateUsageReport() {
         return String.format(
                 "Emergency Service Report [%s]:\n- Type: %s\n- Response Time: %d min\n- Calls Handled: %d\n- Status: %s\n- Total Responses: %d\n- Maintenance Cost: $%.2f",
-                resourceID, serviceType, responseTime, callsHandled, status, totalEmergencyResponses,
+                resourceID, serviceType, responseTime, callsHandled, status, getTotalEmergencyResponses(),
                 calculateMaintenanceCost());
     }
 
@@ -82,11 +87,8 @@ public class EmergencyService extends CityResource implements Alertable {
     }
 
     public static void handlePowerOutage(PowerStation station) {
-        if (SmartCityGUI.getReportArea() != null) {
-            SmartCityGUI.getReportArea()
-                    .append("Emergency services alerted for power outage at: " + station.getLocation() +
-                            " at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-        }
+        CityEvents.publish(CityEvent.Type.ALERT, station.getResourceID(),
+                "Emergency services alerted for power outage at: " + station.getLocation());
     }
 
     public String getServiceType() {
@@ -101,12 +103,7 @@ public class EmergencyService extends CityResource implements Alertable {
         return callsHandled;
     }
 
-    public static int getTotalEmergencyResponses() {
-        return totalEmergencyResponses;
-    }
-
-    public static void resetEmergencyMetrics() {
-        totalEmergencyResponses = 0;
-        averageResponseTime = 0.0;
+    public static long getTotalEmergencyResponses() {
+        return repository == null ? 0 : repository.getMetrics().getEmergencyResponses();
     }
 }
\ No newline at end of file
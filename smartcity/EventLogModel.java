@@ -0,0 +1,128 @@
+package smartcity;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import javax.swing.AbstractListModel;
+
+public class EventLogModel extends AbstractListModel<CityEvent> {
+    private static final long serialVersionUID = 1941305537978736861L;
+
+    private final int capacity;
+    private final transient CityEvent[] events;
+    private final long[] visible;
+    private long first;
+    private long appended;
+    private int visibleStart;
+    private int visibleCount;
+    private CityEvent.Type typeFilter;
+    private String resourceFilter = "";
+
+    public EventLogModel(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.events = new CityEvent[capacity];
+        this.visible = new long[capacity];
+    }
+
+    public void append(List<CityEvent> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int before = visibleCount;
+        int removed = 0;
+        for (CityEvent event : batch) {
+            long sequence = appended++;
+            events[slot(sequence)] = event;
+            first = Math.max(first, appended - capacity);
+            while (visibleCount > 0 && visible[visibleStart] < first) {
+                visibleStart = (visibleStart + 1) % capacity;
+                visibleCount--;
+                removed++;
+            }
+            if (matches(event)) {
+                visible[(visibleStart + visibleCount) % capacity] = sequence;
+                visibleCount++;
+            }
+        }
+        int removedBefore = Math.min(removed, before);
+        int added = visibleCount - (before - removedBefore);
+        if (removedBefore > 0) {
+            fireIntervalRemoved(this, 0, removedBefore - 1);
+        }
+        if (added > 0) {
+            fireIntervalAdded(this, visibleCount - added, visibleCount - 1);
+        }
+    }
+
+    public void setFilter(CityEvent.Type type, String resourceID) {
+        typeFilter = type;
+        resourceFilter = resourceID == null ? "" : resourceID.trim().toUpperCase(Locale.ROOT);
+        rebuild();
+    }
+
+    public void clear() {
+        Arrays.fill(events, null);
+        first = appended;
+        rebuild();
+    }
+
+    @Override
+    public int getSize() {
+        return visibleCount;
+    }
+
+    @Override
+    public CityEvent getElementAt(int index) {
+        if (index < 0 || index >= visibleCount) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + visibleCount);
+        }
+        return events[slot(visible[(visibleStart + index) % capacity])];
+    }
+
+    public int getRetainedCount() {
+        return (int) (appended - first);
+    }
+
+    public long getAppendedCount() {
+        return appended;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void rebuild() {
+        int before = visibleCount;
+        visibleStart = 0;
+        visibleCount = 0;
+        if (before > 0) {
+            fireIntervalRemoved(this, 0, before - 1);
+        }
+        for (long sequence = first; sequence < appended; sequence++) {
+            if (matches(events[slot(sequence)])) {
+                visible[visibleCount++] = sequence;
+            }
+        }
+        if (visibleCount > 0) {
+            fireIntervalAdded(this, 0, visibleCount - 1);
+        }
+    }
+
+    private boolean matches(CityEvent event) {
+        if (typeFilter != null && event.getType() != typeFilter) {
+            return false;
+        }
+        if (resourceFilter.isEmpty()) {
+            return true;
+        }
+        String id = event.getResourceID();
+        return id != null && id.toUpperCase(Locale.ROOT).contains(resourceFilter);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
@@ -0,0 +1,120 @@
+package smartcity;
+
+import java.awt.*;
+import java.util.List;
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+public final class EventLogPanel extends JPanel {
+    private static final long serialVersionUID = 1941305537978736861L;
+    private static final String ALL_TYPES = "All Events";
+
+    private final EventLogModel model;
+    private final JList<CityEvent> list;
+    private final JScrollPane scrollPane;
+    private final JComboBox<Object> typeCombo;
+    private final JTextField resourceField;
+    private final JLabel countLabel;
+
+    public EventLogPanel(int capacity) {
+        super(new BorderLayout());
+        model = new EventLogModel(capacity);
+        list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        list.setPrototypeCellValue(new CityEvent(CityEvent.Type.INFO, null,
+                "EMERGENCY SCENARIO: Power outage at Downtown Power District"));
+        list.setVisibleRowCount(8);
+        list.setCellRenderer(new EventRenderer());
+        scrollPane = new JScrollPane(list);
+
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        typeCombo = new JComboBox<>();
+        typeCombo.addItem(ALL_TYPES);
+        for (CityEvent.Type type : CityEvent.Type.values()) {
+            typeCombo.addItem(type);
+        }
+        typeCombo.addActionListener(_ -> applyFilter());
+        resourceField = new JTextField(12);
+        resourceField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+        });
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(_ -> {
+            model.clear();
+            updateCount();
+        });
+        countLabel = new JLabel();
+        filterPanel.add(new JLabel("Type:"));
+        filterPanel.add(typeCombo);
+        filterPanel.add(new JLabel("Resource ID:"));
+        filterPanel.add(resourceField);
+        filterPanel.add(clearButton);
+        filterPanel.add(countLabel);
+
+        add(filterPanel, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+        updateCount();
+    }
+
+    public void append(List<CityEvent> batch) {
+        JScrollBar bar = scrollPane.getVerticalScrollBar();
+        boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight();
+        model.append(batch);
+        if (atBottom && model.getSize() > 0) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+        updateCount();
+    }
+
+    public void append(CityEvent event) {
+        append(List.of(event));
+    }
+
+    public EventLogModel getModel() {
+        return model;
+    }
+
+    private void applyFilter() {
+        Object selected = typeCombo.getSelectedItem();
+        model.setFilter(selected instanceof CityEvent.Type ? (CityEvent.Type) selected : null,
+                resourceField.getText());
+        if (model.getSize() > 0) {
+            list.ensureIndexIsVisible(model.getSize() - 1);
+        }
+        updateCount();
+    }
+
+    private void updateCount() {
+        countLabel.setText(model.getSize() + " shown / " + model.getRetainedCount() + " kept (max "
+                + model.getCapacity() + ")");
+    }
+
+    private static final class EventRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1941305537978736861L;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            if (!isSelected && value instanceof CityEvent
+                    && ((CityEvent) value).getType() == CityEvent.Type.ALERT) {
+                setForeground(Color.RED.darker());
+            }
+            return this;
+        }
+    }
+}
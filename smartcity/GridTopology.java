@@ -0,0 +1,361 @@
+package smartcity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class GridTopology {
+    private static final int SUBSTATION_LINKS = 3;
+    private static final int TRANSFER_HOPS = 2;
+
+    private final String gridID;
+    private final PowerStation[] stations;
+    private final String[] substations;
+    private final Map<String, Integer> stationIndex = new HashMap<>();
+    private final int[] substationOf;
+    private final double[] capacity;
+    private final double[] load;
+    private final double[] consumers;
+    private final int[] offsets;
+    private final int[] edges;
+
+    public GridTopology(SmartGrid grid) {
+        this(grid, new ArrayList<>());
+    }
+
+    public GridTopology(SmartGrid grid, Collection<CityZone> zones) {
+        Map<String, String> zoneOf = new HashMap<>();
+        for (CityZone zone : zones) {
+            for (PowerStation station : zone.getPowerStations()) {
+                zoneOf.put(station.getResourceID(), zone.getZoneID());
+            }
+        }
+        List<PowerStation> gridStations = new ArrayList<>(grid.getPowerStations());
+        int stationCount = gridStations.size();
+        this.gridID = grid.getGridID();
+        this.stations = gridStations.toArray(new PowerStation[0]);
+        this.substationOf = new int[stationCount];
+        this.capacity = new double[stationCount];
+        this.load = new double[stationCount];
+        this.consumers = new double[stationCount];
+        Map<String, Integer> substationIndex = new LinkedHashMap<>();
+        for (int s = 0; s < stationCount; s++) {
+            PowerStation station = stations[s];
+            stationIndex.put(station.getResourceID(), s);
+            String zone = zoneOf.getOrDefault(station.getResourceID(), station.getLocation());
+            Integer z = substationIndex.get(zone);
+            if (z == null) {
+                z = substationIndex.size();
+                substationIndex.put(zone, z);
+            }
+            substationOf[s] = z;
+            capacity[s] = grid.isOnline(station) ? station.getEnergyOutput() : 0.0;
+            load[s] = grid.getLoad(station);
+            consumers[s] = grid.getConsumerCount(station);
+        }
+        this.substations = substationIndex.keySet().toArray(new String[0]);
+
+        int substationCount = substations.length;
+        int[] degree = new int[stationCount + substationCount];
+        double[] latitude = new double[substationCount];
+        double[] longitude = new double[substationCount];
+        for (int s = 0; s < stationCount; s++) {
+            int z = substationOf[s];
+            degree[s]++;
+            degree[stationCount + z]++;
+            latitude[z] += stations[s].getLatitude();
+            longitude[z] += stations[s].getLongitude();
+        }
+        SpatialGrid<Integer> centroids = new SpatialGrid<>(CityGeography.MIN_LATITUDE, CityGeography.MIN_LONGITUDE,
+                CityGeography.MAX_LATITUDE, CityGeography.MAX_LONGITUDE, SpatialGrid.dimensionFor(substationCount),
+                SpatialGrid.dimensionFor(substationCount), 1);
+        for (int z = 0; z < substationCount; z++) {
+            int members = degree[stationCount + z];
+            latitude[z] /= members;
+            longitude[z] /= members;
+            centroids.insert(z, latitude[z], longitude[z], 0);
+        }
+        Set<Long> links = new HashSet<>();
+        for (int z = 0; z < substationCount; z++) {
+            for (int neighbour : centroids.nearest(latitude[z], longitude[z], SUBSTATION_LINKS + 1)) {
+                if (neighbour != z && links.add(((long) Math.min(z, neighbour) << 32) | Math.max(z, neighbour))) {
+                    degree[stationCount + z]++;
+                    degree[stationCount + neighbour]++;
+                }
+            }
+        }
+
+        this.offsets = new int[degree.length + 1];
+        for (int n = 0; n < degree.length; n++) {
+            offsets[n + 1] = offsets[n] + degree[n];
+        }
+        this.edges = new int[offsets[degree.length]];
+        int[] fill = Arrays.copyOf(offsets, degree.length);
+        for (int s = 0; s < stationCount; s++) {
+            int substation = stationCount + substationOf[s];
+            edges[fill[s]++] = substation;
+            edges[fill[substation]++] = s;
+        }
+        for (long link : links) {
+            int a = stationCount + (int) (link >>> 32);
+            int b = stationCount + (int) link;
+            edges[fill[a]++] = b;
+            edges[fill[b]++] = a;
+        }
+    }
+
+    public CascadeResult simulateOutage(Collection<String> stationIDs, double tolerance) {
+        int[] initial = new int[stationIDs.size()];
+        int count = 0;
+        for (String stationID : stationIDs) {
+            Integer s = stationIndex.get(stationID);
+            if (s == null) {
+                throw new IllegalArgumentException("Power station not on grid " + gridID + ": " + stationID);
+            }
+            initial[count++] = s;
+        }
+        return new Cascade().run(initial, tolerance);
+    }
+
+    public List<CascadeResult> contingencyStudy(double tolerance, int limit) {
+        List<CascadeResult> results = new ArrayList<>();
+        Cascade cascade = new Cascade();
+        for (int s = 0; s < stations.length; s++) {
+            if (capacity[s] > 0) {
+                results.add(cascade.run(new int[] { s }, tolerance));
+            }
+        }
+        results.sort((a, b) -> a.stationsFailed != b.stationsFailed ? Integer.compare(b.stationsFailed,
+                a.stationsFailed) : Double.compare(b.unservedLoad, a.unservedLoad));
+        return new ArrayList<>(results.subList(0, Math.min(limit, results.size())));
+    }
+
+    public int getStationCount() {
+        return stations.length;
+    }
+
+    public int getSubstationCount() {
+        return substations.length;
+    }
+
+    public int getLinkCount() {
+        return edges.length / 2;
+    }
+
+    public String getSubstation(PowerStation station) {
+        Integer s = stationIndex.get(station.getResourceID());
+        return s == null ? null : substations[substationOf[s]];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Grid topology %s: %d stations, %d substations, %d links", gridID, stations.length,
+                substations.length, getLinkCount());
+    }
+
+    private final class Cascade {
+        private final double[] load = GridTopology.this.load.clone();
+        private final double[] consumers = GridTopology.this.consumers.clone();
+        private final boolean[] down = new boolean[stations.length];
+        private final int[] wave = new int[stations.length];
+        private final int[] queue = new int[stations.length];
+        private final int[] touched = new int[stations.length];
+        private final int[] touchedRun = new int[stations.length];
+        private final int[] visited = new int[offsets.length - 1];
+        private final int[] frontier = new int[substations.length];
+        private final int[] recipients = new int[stations.length];
+        private int touchedCount;
+        private int run;
+        private int epoch;
+
+        Cascade() {
+            for (int s = 0; s < stations.length; s++) {
+                down[s] = capacity[s] <= 0;
+            }
+        }
+
+        CascadeResult run(int[] initial, double tolerance) {
+            long started = System.nanoTime();
+            run++;
+            int head = 0;
+            int tail = 0;
+            for (int s : initial) {
+                if (!down[s]) {
+                    touch(s);
+                    down[s] = true;
+                    wave[s] = 0;
+                    queue[tail++] = s;
+                }
+            }
+            int seeded = tail;
+            double lostCapacity = 0.0;
+            double transferred = 0.0;
+            double unservedLoad = 0.0;
+            double unservedConsumers = 0.0;
+            int waves = tail > 0 ? 1 : 0;
+            while (head < tail) {
+                int s = queue[head++];
+                lostCapacity += capacity[s];
+                double shedLoad = load[s];
+                double shedConsumers = consumers[s];
+                load[s] = 0.0;
+                consumers[s] = 0.0;
+                int count = recipients(s);
+                double total = 0.0;
+                for (int i = 0; i < count; i++) {
+                    total += capacity[recipients[i]];
+                }
+                if (total <= 0) {
+                    unservedLoad += shedLoad;
+                    unservedConsumers += shedConsumers;
+                    continue;
+                }
+                transferred += shedLoad;
+                for (int i = 0; i < count; i++) {
+                    int r = recipients[i];
+                    double share = capacity[r] / total;
+                    touch(r);
+                    load[r] += shedLoad * share;
+                    consumers[r] += shedConsumers * share;
+                    if (!down[r] && load[r] > capacity[r] * tolerance) {
+                        down[r] = true;
+                        wave[r] = wave[s] + 1;
+                        waves = Math.max(waves, wave[r] + 1);
+                        queue[tail++] = r;
+                    }
+                }
+            }
+            String[] failed = new String[tail];
+            for (int i = 0; i < tail; i++) {
+                failed[i] = stations[queue[i]].getResourceID();
+            }
+            CascadeResult result = new CascadeResult(failed, seeded, waves, lostCapacity, transferred,
+                    unservedLoad, (int) Math.round(unservedConsumers), System.nanoTime() - started);
+            reset();
+            return result;
+        }
+
+        private int recipients(int failed) {
+            int count = 0;
+            int stationCount = stations.length;
+            int size = 1;
+            frontier[0] = stationCount + substationOf[failed];
+            visited[frontier[0]] = ++epoch;
+            for (int hop = 0; hop <= TRANSFER_HOPS && size > 0; hop++) {
+                int next = 0;
+                for (int i = 0; i < size; i++) {
+                    int substation = frontier[i];
+                    for (int e = offsets[substation]; e < offsets[substation + 1]; e++) {
+                        int node = edges[e];
+                        if (node < stationCount) {
+                            if (!down[node]) {
+                                recipients[count++] = node;
+                            }
+                        } else if (visited[node] != epoch) {
+                            visited[node] = epoch;
+                            frontier[size + next++] = node;
+                        }
+                    }
+                }
+                if (count > 0) {
+                    return count;
+                }
+                System.arraycopy(frontier, size, frontier, 0, next);
+                size = next;
+            }
+            return count;
+        }
+
+        private void touch(int s) {
+            if (touchedRun[s] != run) {
+                touchedRun[s] = run;
+                touched[touchedCount++] = s;
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                int s = touched[i];
+                load[s] = GridTopology.this.load[s];
+                consumers[s] = GridTopology.this.consumers[s];
+                down[s] = capacity[s] <= 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    public static final class CascadeResult {
+        private final String[] failedStations;
+        private final int initialFailures;
+        private final int stationsFailed;
+        private final int waves;
+        private final double lostCapacity;
+        private final double transferredLoad;
+        private final double unservedLoad;
+        private final int unservedConsumers;
+        private final long elapsedNanos;
+
+        CascadeResult(String[] failedStations, int initialFailures, int waves, double lostCapacity,
+                double transferredLoad, double unservedLoad, int unservedConsumers, long elapsedNanos) {
+            this.failedStations = failedStations;
+            this.initialFailures = initialFailures;
+            this.stationsFailed = failedStations.length;
+            this.waves = waves;
+            this.lostCapacity = lostCapacity;
+            this.transferredLoad = transferredLoad;
+            this.unservedLoad = unservedLoad;
+            this.unservedConsumers = unservedConsumers;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public List<String> getFailedStations() {
+            return List.of(failedStations);
+        }
+
+        public int getStationsFailed() {
+            return stationsFailed;
+        }
+
+        public int getCascadeFailures() {
+            return stationsFailed - initialFailures;
+        }
+
+        public int getWaves() {
+            return waves;
+        }
+
+        public double getLostCapacity() {
+            return lostCapacity;
+        }
+
+        public double getTransferredLoad() {
+            return transferredLoad;
+        }
+
+        public double getUnservedLoad() {
+            return unservedLoad;
+        }
+
+        public int getUnservedConsumers() {
+            return unservedConsumers;
+        }
+
+        public String generateReport() {
+            StringBuilder report = new StringBuilder(String.format(
+                    "Cascade from %s: %d stations failed in %d waves, %.2f MW capacity lost, %.2f MW transferred, "
+                            + "%.2f MW unserved (%d consumers), %.2f ms",
+                    failedStations.length == 0 ? "none" : failedStations[0], stationsFailed, waves, lostCapacity,
+                    transferredLoad, unservedLoad, unservedConsumers, elapsedNanos / 1_000_000.0));
+            for (int i = initialFailures; i < failedStations.length; i++) {
+                report.append(String.format("%n- TRIPPED %s", failedStations[i]));
+            }
+            return report.toString();
+        }
+    }
+}
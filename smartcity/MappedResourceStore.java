@@ -0,0 +1,295 @@
+package smartcity;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class MappedResourceStore {
+    private static final int CACHE_CAPACITY = 10_000;
+
+    private final String filename;
+    private final CityDataFile.Section[] sections;
+    private final int[] sectionStart;
+    private final int size;
+    private final ByteBuffer data;
+    private final int idTable;
+    private final int[] heapIdTable;
+    private final int idMask;
+    private final Map<Integer, CityResource> cache;
+    private final Map<Integer, CityResource> pinned;
+    private final Map<Integer, RowReference> materialized = new HashMap<>();
+    private final ReferenceQueue<CityResource> collected = new ReferenceQueue<>();
+    private final CityMetrics metrics;
+
+    private MappedResourceStore(String filename, CityDataFile.Contents contents, CityMetrics metrics) {
+        this.filename = filename;
+        this.metrics = metrics;
+        this.data = contents.data;
+        this.sections = contents.sections.toArray(new CityDataFile.Section[0]);
+        this.sectionStart = new int[sections.length + 1];
+        for (int i = 0; i < sections.length; i++) {
+            sectionStart[i + 1] = sectionStart[i] + sections[i].rows;
+        }
+        this.size = sectionStart[sections.length];
+        if (contents.idIndex >= 0) {
+            this.idTable = contents.idIndex + 4;
+            this.idMask = data.getInt(contents.idIndex) - 1;
+            this.heapIdTable = null;
+        } else {
+            this.idTable = -1;
+            this.heapIdTable = new int[CityDataFile.idTableSize(size)];
+            this.idMask = heapIdTable.length - 1;
+            for (int row = 0; row < size; row++) {
+                int slot = CityDataFile.idSlot(idAt(row), idMask);
+                while (heapIdTable[slot] != 0) {
+                    slot = (slot + 1) & idMask;
+                }
+                heapIdTable[slot] = row + 1;
+            }
+        }
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1941305537978736861L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CityResource> eldest) {
+                return size() > CACHE_CAPACITY;
+            }
+        };
+        this.pinned = new ConcurrentHashMap<>();
+    }
+
+    public static MappedResourceStore open(String filename, CityMetrics metrics) throws IOException {
+        return new MappedResourceStore(filename, CityDataFile.open(filename), metrics);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String idAt(int row) {
+        int s = sectionOf(row);
+        return sections[s].ids.get(row - sectionStart[s]);
+    }
+
+    public int indexOf(String resourceID) {
+        for (int slot = CityDataFile.idSlot(resourceID, idMask);; slot = (slot + 1) & idMask) {
+            int entry = heapIdTable != null ? heapIdTable[slot] : data.getInt(idTable + slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (idAt(entry - 1).equals(resourceID)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    public CityResource get(int row) {
+        CityResource resource = pinned.get(row);
+        if (resource != null) {
+            return resource;
+        }
+        synchronized (cache) {
+            resource = cache.get(row);
+            if (resource == null) {
+                expungeCollected();
+                RowReference reference = materialized.get(row);
+                resource = reference == null ? null : reference.get();
+                if (resource == null) {
+                    int s = sectionOf(row);
+                    resource = sections[s].materialize(row - sectionStart[s]);
+                    metrics.adopt(resource);
+                    materialized.put(row, new RowReference(row, resource, collected));
+                }
+                cache.put(row, resource);
+            }
+            return resource;
+        }
+    }
+
+    public CityResource get(String resourceID) {
+        int row = indexOf(resourceID);
+        return row < 0 ? null : get(row);
+    }
+
+    CityResource pin(int row) {
+        CityResource resource = get(row);
+        pinned.putIfAbsent(row, resource);
+        return pinned.get(row);
+    }
+
+    void pin(int row, CityResource resource) {
+        pinned.putIfAbsent(row, resource);
+    }
+
+    void unpin(int row) {
+        pinned.remove(row);
+        synchronized (cache) {
+            cache.remove(row);
+            materialized.remove(row);
+        }
+    }
+
+    void seedMetrics() {
+        for (CityDataFile.Section section : sections) {
+            section.seed(metrics);
+        }
+    }
+
+    void seedStatuses(StatusIndex index) {
+        for (CityDataFile.Section section : sections) {
+            section.seed(index);
+        }
+    }
+
+    void forEachRow(int[] tombstones, CityRepository.RowVisitor visitor) {
+        int t = 0;
+        for (int s = 0; s < sections.length; s++) {
+            for (int i = 0; i < sections[s].rows; i++) {
+                int row = sectionStart[s] + i;
+                while (t < tombstones.length && tombstones[t] < row) {
+                    t++;
+                }
+                if (t < tombstones.length && tombstones[t] == row) {
+                    continue;
+                }
+                CityResource live = pinned.get(row);
+                if (live != null) {
+                    visitor.visit(live.getResourceID(), live.getClass(), live.getStatus(), live.getLatitude(),
+                            live.getLongitude());
+                } else {
+                    sections[s].visit(i, visitor);
+                }
+            }
+        }
+    }
+
+    void detachAll() {
+        for (CityResource resource : pinned.values()) {
+            metrics.detach(resource);
+        }
+        synchronized (cache) {
+            for (RowReference reference : materialized.values()) {
+                CityResource resource = reference.get();
+                if (resource != null) {
+                    metrics.detach(resource);
+                }
+            }
+        }
+    }
+
+    private void expungeCollected() {
+        for (Object cleared = collected.poll(); cleared != null; cleared = collected.poll()) {
+            RowReference reference = (RowReference) cleared;
+            materialized.remove(reference.row, reference);
+        }
+    }
+
+    <S extends CityResource> List<S> view(Class<S> type, int[] tombstones, List<S> tail) {
+        int count = 0;
+        for (CityDataFile.Section section : sections) {
+            if (type.isAssignableFrom(section.resourceType())) {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int r = 0;
+        for (int i = 0; i < sections.length; i++) {
+            if (type.isAssignableFrom(sections[i].resourceType())) {
+                starts[r] = sectionStart[i];
+                ends[r] = sectionStart[i + 1];
+                r++;
+            }
+        }
+        return new RowView<>(type, starts, ends, tombstones, tail);
+    }
+
+    private int sectionOf(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " outside store of " + size);
+        }
+        int s = 0;
+        while (sectionStart[s + 1] <= row) {
+            s++;
+        }
+        return s;
+    }
+
+    private static int tombstonesBefore(int[] tombstones, int row) {
+        int i = Arrays.binarySearch(tombstones, row);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static final class RowReference extends WeakReference<CityResource> {
+        private final int row;
+
+        RowReference(int row, CityResource resource, ReferenceQueue<CityResource> queue) {
+            super(resource, queue);
+            this.row = row;
+        }
+    }
+
+    private final class RowView<S> extends AbstractList<S> implements RandomAccess {
+        private final Class<S> type;
+        private final int[] starts;
+        private final int[] liveBefore;
+        private final int[] tombstones;
+        private final List<S> tail;
+        private final int storedRows;
+
+        RowView(Class<S> type, int[] starts, int[] ends, int[] tombstones, List<S> tail) {
+            this.type = type;
+            this.starts = starts;
+            this.tombstones = tombstones;
+            this.tail = tail;
+            this.liveBefore = new int[starts.length + 1];
+            for (int r = 0; r < starts.length; r++) {
+                int removed = tombstonesBefore(tombstones, ends[r]) - tombstonesBefore(tombstones, starts[r]);
+                liveBefore[r + 1] = liveBefore[r] + (ends[r] - starts[r]) - removed;
+            }
+            this.storedRows = liveBefore[starts.length];
+        }
+
+        @Override
+        public S get(int index) {
+            if (index >= storedRows) {
+                return tail.get(index - storedRows);
+            }
+            if (index < 0) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            int r = 0;
+            while (liveBefore[r + 1] <= index) {
+                r++;
+            }
+            int logical = index - liveBefore[r];
+            int base = tombstonesBefore(tombstones, starts[r]);
+            int row = starts[r] + logical;
+            while (true) {
+                int next = starts[r] + logical + tombstonesBefore(tombstones, row + 1) - base;
+                if (next == row) {
+                    return type.cast(MappedResourceStore.this.get(row));
+                }
+                row = next;
+            }
+        }
+
+        @Override
+        public int size() {
+            return storedRows + tail.size();
+        }
+    }
+}
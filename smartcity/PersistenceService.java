@@ -0,0 +1,77 @@
+package smartcity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PersistenceService {
+    private final ExecutorService worker;
+
+    public PersistenceService() {
+        this.worker = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "persistence-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public interface Task<V> {
+        V run() throws Exception;
+    }
+
+    public <V> CompletableFuture<V> submit(Task<V> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, worker);
+    }
+
+    public CompletableFuture<Integer> load(CityRepository<CityResource> repository, String filename, int batchSize,
+            ProgressListener progress) {
+        return submit(() -> repository.loadInBatches(filename, batchSize, progress));
+    }
+
+    public CompletableFuture<Integer> open(CityRepository<CityResource> repository, String filename, int batchSize,
+            ProgressListener progress) {
+        return submit(() -> {
+            if (!CityDataFile.isCityDataFile(filename)) {
+                return repository.loadInBatches(filename, batchSize, progress);
+            }
+            repository.openMapped(filename);
+            if (progress != null) {
+                progress.progress(repository.size(), repository.size());
+            }
+            return repository.size();
+        });
+    }
+
+    public CompletableFuture<Integer> save(DeltaSegmentStore store, RepositoryJournal journal,
+            ProgressListener progress) {
+        return submit(() -> {
+            int[] written = new int[1];
+            if (journal != null) {
+                journal.checkpoint(() -> written[0] = store.saveDelta(progress));
+            } else {
+                written[0] = store.saveDelta(progress);
+            }
+            return written[0];
+        });
+    }
+
+    public void shutdown() {
+        worker.shutdown();
+    }
+
+    public static Throwable unwrap(Throwable failure) {
+        while ((failure instanceof CompletionException || failure instanceof ExecutionException)
+                && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+}
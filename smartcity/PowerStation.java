@@ -1,47 +1,51 @@
 package smartcity;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 public class PowerStation extends CityResource implements Alertable {
     private static final long serialVersionUID = 1941305537978736861L;
+    static final Set<ResourceStatus> STATUSES = Collections.unmodifiableSet(EnumSet.of(ResourceStatus.OPERATIONAL,
+            ResourceStatus.MAINTENANCE, ResourceStatus.OUTAGE, ResourceStatus.OFFLINE));
+    private static final int OUTAGE_RESPONDERS = 2;
+    static final int OUTAGE_MINUTES = 20;
+    static final int MAINTENANCE_MINUTES = 30;
     private double energyOutput;
     private String powerType;
     private boolean alertEnabled;
     private final ArrayList<Consumer> connectedConsumers;
 
-    private static double totalEnergyConsumed = 0.0;
-
-    public static void addToTotalEnergyConsumed(double amount) {
-        totalEnergyConsumed += amount;
-    }
-
     public PowerStation(String resourceID, String location, String status, double energyOutput, String powerType) {
-        super(resourceID, location, status);
+        super(resourceID, location, status, STATUSES);
         this.energyOutput = energyOutput;
         this.powerType = powerType;
         this.alertEnabled = true;
         this.connectedConsumers = new ArrayList<>();
-        totalEnergyUsage += energyOutput;
     }
 
     @Override
-    public double calculateMaintenanceCost() {
+    public Set<ResourceStatus> getSupportedStatuses() {
+        return STATUSES;
+    }
+
+    @Override
+    protected double computeMaintenanceCost() {
+        return maintenanceCost(powerType, energyOutput, connectedConsumers.size());
+    }
+
+    static double maintenanceCost(String powerType, double energyOutput, int consumers) {
         double baseRate = powerType.equals("Solar") ? 0.05 : 0.08;
-        double usageCost = energyOutput * baseRate * (connectedConsumers.size() * 0.01);
-        double maintenanceCost = energyOutput * baseRate + usageCost;
-        totalMaintenanceCost += maintenanceCost;
-        return maintenanceCost;
+        double usageCost = energyOutput * baseRate * (consumers * 0.01);
+        return energyOutput * baseRate + usageCost;
     }
 
     @Override
     public void sendEmergencyAlert(String message) {
         if (alertEnabled) {
-            if (SmartCityGUI.getReportArea() != null) {
-                SmartCityGUI.getReportArea().append("POWER ALERT [" + resourceID + "]: " + message + " at " +
-                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-            }
+            CityEvents.publish(CityEvent.Type.ALERT, resourceID, "POWER ALERT [" + resourceID + "]: " + message);
             EmergencyService.handlePowerOutage(this);
         }
     }
@@ -70,44 +74,99 @@ public class PowerStation extends CityResource implements Alertable {
     }
 
     public void addConsumer(Consumer consumer) {
-        connectedConsumers.add(consumer);
-        totalEnergyConsumed += consumer.getConsumption();
+        synchronized (this) {
+            connectedConsumers.add(consumer);
+            CityMetrics m = metrics;
+            if (m != null) {
+                m.energyConsumedChanged(this, consumer.getConsumption());
+            }
+            maintenanceInputsChanged();
+        }
+        markDirty();
     }
 
-    public void simulateOutage() {
-        setStatus("Outage");
-        sendEmergencyAlert("Power outage detected! Emergency response required.");
-        if (repository != null) {
-            ArrayList<CityResource> allResources = repository.getAll();
-            for (CityResource resource : allResources) {
-                if (resource instanceof EmergencyService) {
-                    EmergencyService service = (EmergencyService) resource;
-                    if (service.getStatus().equals("Available") && isNearby(service)) {
-                        service.sendEmergencyAlert("Respond to power outage at " + getLocation());
-                    }
+    public boolean beginMaintenance(int minutes) {
+        if (!trySetStatus(ResourceStatus.OPERATIONAL, ResourceStatus.MAINTENANCE)) {
+            return false;
+        }
+        scheduleStatus(ResourceStatus.OPERATIONAL, minutes, CityEvent.Type.STATUS_CHANGE,
+                "Power station " + resourceID + " maintenance window complete");
+        return true;
+    }
+
+    public List<Consumer> releaseConsumers() {
+        List<Consumer> released;
+        synchronized (this) {
+            released = new ArrayList<>(connectedConsumers);
+            connectedConsumers.clear();
+            consumersRemoved(released);
+        }
+        markDirty();
+        return released;
+    }
+
+    public void removeConsumers(Set<Consumer> removed) {
+        synchronized (this) {
+            List<Consumer> released = new ArrayList<>(removed.size());
+            for (Consumer consumer : connectedConsumers) {
+                if (removed.contains(consumer)) {
+                    released.add(consumer);
                 }
             }
+            connectedConsumers.removeIf(removed::contains);
+            consumersRemoved(released);
         }
+        markDirty();
     }
 
-    private boolean isNearby(EmergencyService service) {
-        return getLocation().equals(service.getLocation()) || Math.random() < 0.5;
+    private void consumersRemoved(List<Consumer> released) {
+        double consumption = 0.0;
+        for (Consumer consumer : released) {
+            consumption += consumer.getConsumption();
+        }
+        CityMetrics m = metrics;
+        if (m != null && consumption != 0.0) {
+            m.energyConsumedChanged(this, -consumption);
+        }
+        maintenanceInputsChanged();
+    }
+
+    public void simulateOutage() {
+        setStatus(ResourceStatus.OUTAGE);
+        scheduleStatus(ResourceStatus.OPERATIONAL, OUTAGE_MINUTES, CityEvent.Type.ALERT,
+                "POWER RESTORED [" + resourceID + "]: " + getLocation() + " back online");
+        sendEmergencyAlert("Power outage detected! Emergency response required.");
+        if (repository != null) {
+            for (int i = 0; i < OUTAGE_RESPONDERS; i++) {
+                repository.getDispatcher().submit(null, DispatchEngine.Severity.HIGH, getLatitude(), getLongitude(),
+                        resourceID, "Respond to power outage at " + getLocation());
+            }
+        }
     }
 
     public double getEnergyOutput() {
         return energyOutput;
     }
 
+    public void setEnergyOutput(double energyOutput) {
+        synchronized (this) {
+            double previous = this.energyOutput;
+            this.energyOutput = energyOutput;
+            CityMetrics m = metrics;
+            if (m != null) {
+                m.energyOutputChanged(this, energyOutput - previous);
+            }
+            maintenanceInputsChanged();
+        }
+        markDirty();
+    }
+
     public String getPowerType() {
         return powerType;
     }
 
     public static double getTotalEnergyConsumed() {
-        return totalEnergyConsumed;
-    }
-
-    public static void resetEnergyMetrics() {
-        totalEnergyConsumed = 0.0;
+        return repository == null ? 0.0 : repository.getMetrics().getEnergyConsumed();
     }
 
     public ArrayList<Consumer> getConnectedConsumers() {
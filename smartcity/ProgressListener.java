@@ -0,0 +1,5 @@
+package smartcity;
+
+public interface ProgressListener {
+    void progress(long done, long total);
+}
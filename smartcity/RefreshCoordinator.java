@@ -0,0 +1,141 @@
+package smartcity;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+public class RefreshCoordinator {
+    private static final double FRAME_BUDGET = 0.5;
+    private static final int SLOWEST_FRAMES_PER_SECOND = 1;
+
+    private final Runnable frame;
+    private final int minIntervalMillis;
+    private final int maxIntervalMillis;
+    private final Timer timer;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicLong requests = new AtomicLong();
+    private long frames;
+    private long totalNanos;
+    private long maxNanos;
+    private long lastNanos;
+    private volatile int intervalMillis;
+    private volatile boolean running;
+    private boolean framePending;
+
+    public RefreshCoordinator(int maxFramesPerSecond, Runnable frame) {
+        if (maxFramesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive: " + maxFramesPerSecond);
+        }
+        this.frame = frame;
+        this.minIntervalMillis = Math.max(1, 1000 / maxFramesPerSecond);
+        this.maxIntervalMillis = Math.max(minIntervalMillis, 1000 / SLOWEST_FRAMES_PER_SECOND);
+        this.intervalMillis = minIntervalMillis;
+        this.timer = new Timer(minIntervalMillis, _ -> onTimer());
+        this.timer.setCoalesce(true);
+    }
+
+    public void start() {
+        running = true;
+        timer.start();
+    }
+
+    public void stop() {
+        running = false;
+        timer.stop();
+    }
+
+    public void requestRefresh() {
+        requests.incrementAndGet();
+        if (!dirty.getAndSet(true) && running) {
+            SwingUtilities.invokeLater(this::resume);
+        }
+    }
+
+    private void resume() {
+        if (running && dirty.get() && !timer.isRunning()) {
+            timer.setInitialDelay(0);
+            timer.start();
+        }
+    }
+
+    private void onTimer() {
+        if (framePending) {
+            return;
+        }
+        if (!dirty.getAndSet(false)) {
+            timer.stop();
+            if (dirty.get()) {
+                resume();
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            frame.run();
+        } catch (RuntimeException e) {
+            CityEvents.publishFailure(null, "Refreshing the display", e);
+        }
+        // runs after the RepaintManager has painted what the frame invalidated
+        framePending = true;
+        SwingUtilities.invokeLater(() -> painted(start));
+    }
+
+    private void painted(long start) {
+        framePending = false;
+        long took = System.nanoTime() - start;
+        frames++;
+        totalNanos += took;
+        maxNanos = Math.max(maxNanos, took);
+        lastNanos = took;
+        adapt(took / 1_000_000.0);
+    }
+
+    private void adapt(double tookMillis) {
+        int interval = intervalMillis;
+        double budget = interval * FRAME_BUDGET;
+        if (tookMillis > budget) {
+            interval = Math.min(maxIntervalMillis, Math.max(interval * 2, (int) Math.ceil(tookMillis / FRAME_BUDGET)));
+        } else if (tookMillis < budget / 4) {
+            interval = Math.max(minIntervalMillis, interval * 3 / 4);
+        }
+        if (interval != intervalMillis) {
+            intervalMillis = interval;
+            timer.setDelay(interval);
+        }
+    }
+
+    public int getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public double getFramesPerSecond() {
+        return 1000.0 / intervalMillis;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public double getAverageFrameMillis() {
+        return frames == 0 ? 0.0 : totalNanos / (frames * 1_000_000.0);
+    }
+
+    public double getMaxFrameMillis() {
+        return maxNanos / 1_000_000.0;
+    }
+
+    public double getLastFrameMillis() {
+        return lastNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UI refresh: %d frames for %d requests, avg %.2f ms, max %.2f ms, now %.1f fps",
+                getFrames(), getRequests(), getAverageFrameMillis(), getMaxFrameMillis(), getFramesPerSecond());
+    }
+}
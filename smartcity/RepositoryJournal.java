@@ -0,0 +1,427 @@
+package smartcity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+public class RepositoryJournal implements RepositoryListener, AutoCloseable {
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte STATUS = 3;
+    private static final byte MOVE = 4;
+    private static final int FRAME_HEADER = 8;
+    private static final int MAX_BATCH = 1024;
+    private static final long COMPACT_THRESHOLD = 4L * 1024 * 1024;
+
+    private final String dataFile;
+    private final Path journalPath;
+    private final Path rotatedPath;
+    private final Path checkpointPath;
+    private final CityRepository<CityResource> repository;
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private final Object channelLock = new Object();
+    private final Object compactLock = new Object();
+    private final ExecutorService compactor;
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private FileChannel channel;
+    private long appended;
+    private long durable;
+    private boolean closed;
+    private IOException failure;
+    private volatile boolean compactionScheduled;
+    private volatile FailureListener failureListener;
+    private boolean recovered;
+
+    private RepositoryJournal(String dataFile, CityRepository<CityResource> repository) {
+        this.dataFile = dataFile;
+        this.journalPath = Paths.get(dataFile + ".journal");
+        this.rotatedPath = Paths.get(dataFile + ".journal.old");
+        this.checkpointPath = Paths.get(dataFile + ".checkpoint");
+        this.repository = repository;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        this.writer.setDaemon(true);
+        this.shutdownHook = new Thread(this::close, "journal-shutdown");
+    }
+
+    public static RepositoryJournal open(String dataFile, CityRepository<CityResource> repository)
+            throws IOException {
+        RepositoryJournal journal = new RepositoryJournal(dataFile, repository);
+        boolean interruptedCompaction = Files.exists(journal.rotatedPath);
+        journal.loadCheckpoint();
+        int replayed = journal.replay(journal.rotatedPath, true) + journal.replay(journal.journalPath, true);
+        journal.recovered = replayed > 0 || Files.exists(journal.checkpointPath);
+        journal.channel = FileChannel.open(journal.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        journal.writer.start();
+        repository.addListener(journal);
+        Runtime.getRuntime().addShutdownHook(journal.shutdownHook);
+        if (interruptedCompaction || replayed > 0) {
+            journal.compact();
+        }
+        return journal;
+    }
+
+    public static int replay(String dataFile, CityRepository<CityResource> repository) throws IOException {
+        RepositoryJournal journal = new RepositoryJournal(dataFile, repository);
+        journal.loadCheckpoint();
+        return journal.replay(journal.rotatedPath, false) + journal.replay(journal.journalPath, false);
+    }
+
+    @Override
+    public void resourceAdded(CityResource resource) {
+        append(ADD, out -> CityDataFile.writeRecord(out, resource));
+    }
+
+    @Override
+    public void resourceRemoved(String resourceID) {
+        append(REMOVE, out -> out.writeUTF(resourceID));
+    }
+
+    @Override
+    public void statusChanged(CityResource resource) {
+        LocalDateTime updated = resource.lastUpdated;
+        String status = resource.getStatus().getLabel();
+        append(STATUS, out -> {
+            out.writeUTF(resource.getResourceID());
+            out.writeUTF(status);
+            out.writeLong(updated.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(updated.getNano());
+        });
+    }
+
+    @Override
+    public void resourceMoved(CityResource resource, double oldLatitude, double oldLongitude) {
+        LocalDateTime updated = resource.lastUpdated;
+        double latitude = resource.getLatitude();
+        double longitude = resource.getLongitude();
+        append(MOVE, out -> {
+            out.writeUTF(resource.getResourceID());
+            out.writeDouble(latitude);
+            out.writeDouble(longitude);
+            out.writeLong(updated.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(updated.getNano());
+        });
+    }
+
+    public void setFailureListener(FailureListener listener) {
+        IOException failed;
+        synchronized (this) {
+            failureListener = listener;
+            failed = failure;
+        }
+        if (failed != null && listener != null) {
+            listener.journalFailed("Writing journal " + journalPath, failed);
+        }
+    }
+
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    public boolean hasRecoveredChanges() {
+        return recovered;
+    }
+
+    public void sync() throws IOException {
+        synchronized (this) {
+            long target = appended;
+            while (durable < target && failure == null && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for journal sync", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public void compact() throws IOException {
+        synchronized (compactLock) {
+            rotate();
+            List<CityResource> frozen = repository.capture(() -> CityDataFile.freeze(repository.snapshot()));
+            CityDataFile.writeFrozen(checkpointPath.toString(), frozen, null);
+            Files.deleteIfExists(rotatedPath);
+        }
+    }
+
+    public void checkpoint(Checkpoint persist) throws IOException {
+        synchronized (compactLock) {
+            rotate();
+            if (Files.exists(checkpointPath)) {
+                repository.saveToFile(dataFile);
+            } else {
+                persist.persist();
+            }
+            Files.deleteIfExists(checkpointPath);
+            Files.deleteIfExists(rotatedPath);
+        }
+    }
+
+    public void discard() throws IOException {
+        close();
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(rotatedPath);
+        Files.deleteIfExists(checkpointPath);
+    }
+
+    @Override
+    public void close() {
+        repository.removeListener(this);
+        synchronized (this) {
+            if (closed && !writer.isAlive()) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor.shutdown();
+        synchronized (compactLock) {
+            synchronized (channelLock) {
+                try {
+                    if (channel.isOpen()) {
+                        channel.force(true);
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    reportFailure("Closing journal " + journalPath, e);
+                }
+            }
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is already shutting down
+            }
+        }
+    }
+
+    public interface Checkpoint {
+        void persist() throws IOException;
+    }
+
+    public interface FailureListener {
+        void journalFailed(String action, IOException failure);
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void rotate() throws IOException {
+        synchronized (channelLock) {
+            channel.force(true);
+            channel.close();
+            Files.move(journalPath, rotatedPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+    }
+
+    private void loadCheckpoint() throws IOException {
+        if (Files.exists(checkpointPath)) {
+            try {
+                repository.loadFromFile(checkpointPath.toString());
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot load journal checkpoint " + checkpointPath, e);
+            }
+        }
+    }
+
+    private void append(byte op, RecordWriter payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(op);
+            payload.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode journal record", e);
+        }
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + body.length);
+        frame.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pending.add(frame);
+            appended++;
+            notifyAll();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer[] batch;
+            synchronized (this) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ByteBuffer[Math.min(pending.size(), MAX_BATCH)];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = pending.poll();
+                }
+            }
+            long journalSize;
+            try {
+                synchronized (channelLock) {
+                    long remaining = 0;
+                    for (ByteBuffer frame : batch) {
+                        remaining += frame.remaining();
+                    }
+                    while (remaining > 0) {
+                        remaining -= channel.write(batch);
+                    }
+                    channel.force(false);
+                    journalSize = channel.size();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    closed = true;
+                    notifyAll();
+                }
+                reportFailure("Writing journal " + journalPath, e);
+                return;
+            }
+            synchronized (this) {
+                durable += batch.length;
+                notifyAll();
+            }
+            if (journalSize > COMPACT_THRESHOLD && !compactionScheduled) {
+                compactionScheduled = true;
+                compactor.execute(() -> {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        reportFailure("Compacting journal " + journalPath, e);
+                    } finally {
+                        compactionScheduled = false;
+                    }
+                });
+            }
+        }
+    }
+
+    private void reportFailure(String action, IOException e) {
+        FailureListener listener = failureListener;
+        if (listener != null) {
+            listener.journalFailed(action, e);
+        } else {
+            CityEvents.publishFailure(null, action, e);
+        }
+    }
+
+    private int replay(Path path, boolean repair) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int applied = 0;
+        try (FileChannel in = repair ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocate(Math.toIntExact(in.size()));
+            while (data.hasRemaining()) {
+                if (in.read(data) < 0) {
+                    break;
+                }
+            }
+            data.flip();
+            int valid = 0;
+            while (data.remaining() >= FRAME_HEADER) {
+                int length = data.getInt();
+                int checksum = data.getInt();
+                if (length < 1 || length > data.remaining()) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                data.get(body);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(body);
+                applied++;
+                valid = data.position();
+            }
+            if (repair && valid < in.size()) {
+                in.truncate(valid);
+            }
+        }
+        return applied;
+    }
+
+    private void apply(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte op = in.readByte();
+        if (op == ADD) {
+            CityResource resource = CityDataFile.readRecord(in);
+            repository.remove(resource.getResourceID());
+            repository.add(resource);
+        } else if (op == REMOVE) {
+            repository.remove(in.readUTF());
+        } else if (op == STATUS) {
+            CityResource resource = repository.get(in.readUTF());
+            String status = in.readUTF();
+            LocalDateTime updated = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            if (resource != null) {
+                resource.restoreStatus(ResourceStatus.parse(status, resource.getSupportedStatuses()), updated);
+            }
+        } else if (op == MOVE) {
+            CityResource resource = repository.get(in.readUTF());
+            double latitude = in.readDouble();
+            double longitude = in.readDouble();
+            LocalDateTime updated = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            if (resource != null) {
+                double oldLatitude = resource.latitude;
+                double oldLongitude = resource.longitude;
+                resource.latitude = latitude;
+                resource.longitude = longitude;
+                resource.lastUpdated = updated;
+                repository.resourceMoved(resource, oldLatitude, oldLongitude);
+            }
+        } else {
+            throw new IOException("Unknown journal record type: " + op);
+        }
+    }
+}
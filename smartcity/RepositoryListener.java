@@ -0,0 +1,11 @@
+package smartcity;
+
+public interface RepositoryListener {
+    void resourceAdded(CityResource resource);
+
+    void resourceRemoved(String resourceID);
+
+    void statusChanged(CityResource resource);
+
+    void resourceMoved(CityResource resource, double oldLatitude, double oldLongitude);
+}
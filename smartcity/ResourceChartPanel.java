@@ -1,22 +1,51 @@
 package smartcity;
 
 import java.awt.*;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import javax.swing.*;
 
 public class ResourceChartPanel extends JPanel {
-    private ArrayList<CityResource> resources;
+    private long transportCount;
+    private long powerCount;
+    private long emergencyCount;
 
     public ResourceChartPanel() {
-        this.resources = new ArrayList<>();
         setPreferredSize(new Dimension(300, 300));
         setBackground(Color.WHITE);
         setBorder(BorderFactory.createTitledBorder("Resource Distribution"));
     }
 
-    public void updateResources(ArrayList<CityResource> resources) {
-        this.resources = resources;
-        repaint();
+    public void updateResources(List<CityResource> resources) {
+        long transport = 0, power = 0, emergency = 0;
+        for (CityResource resource : resources) {
+            if (resource instanceof TransportUnit)
+                transport++;
+            else if (resource instanceof PowerStation)
+                power++;
+            else if (resource instanceof EmergencyService)
+                emergency++;
+        }
+        updateCounts(transport, power, emergency);
+    }
+
+    public void updateCounts(Map<String, CityMetrics.Snapshot> byType) {
+        updateCounts(count(byType, TransportUnit.class), count(byType, PowerStation.class),
+                count(byType, EmergencyService.class));
+    }
+
+    private static long count(Map<String, CityMetrics.Snapshot> byType, Class<?> type) {
+        CityMetrics.Snapshot snapshot = byType.get(type.getSimpleName());
+        return snapshot == null ? 0 : snapshot.getResources();
+    }
+
+    private void updateCounts(long transport, long power, long emergency) {
+        if (transport != transportCount || power != powerCount || emergency != emergencyCount) {
+            transportCount = transport;
+            powerCount = power;
+            emergencyCount = emergency;
+            repaint();
+        }
     }
 
     @Override
@@ -31,17 +60,7 @@ public class ResourceChartPanel extends JPanel {
         int barWidth = 60;
         int gap = 20;
 
-        int transportCount = 0, powerCount = 0, emergencyCount = 0;
-        for (CityResource resource : resources) {
-            if (resource instanceof TransportUnit)
-                transportCount++;
-            else if (resource instanceof PowerStation)
-                powerCount++;
-            else if (resource instanceof EmergencyService)
-                emergencyCount++;
-        }
-
-        int maxCount = Math.max(1, Math.max(transportCount, Math.max(powerCount, emergencyCount)));
+        long maxCount = Math.max(1, Math.max(transportCount, Math.max(powerCount, emergencyCount)));
         double scale = (height - 2 * margin - 30) / (double) maxCount;
 
         g2d.setColor(Color.BLACK);
@@ -0,0 +1,90 @@
+package smartcity;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public enum ResourceStatus {
+    ACTIVE("Active", true),
+    OPERATIONAL("Operational", true),
+    AVAILABLE("Available", true),
+    RESPONDING("Responding", false),
+    EMERGENCY("Emergency", false),
+    MAINTENANCE("Maintenance", false),
+    OUTAGE("Outage", false),
+    OFFLINE("Offline", false);
+
+    private static final Map<String, ResourceStatus> LEGACY = new HashMap<>();
+
+    static {
+        ACTIVE.next = EnumSet.of(EMERGENCY, MAINTENANCE, OFFLINE);
+        OPERATIONAL.next = EnumSet.of(MAINTENANCE, OUTAGE, OFFLINE);
+        AVAILABLE.next = EnumSet.of(RESPONDING, MAINTENANCE, OFFLINE);
+        RESPONDING.next = EnumSet.of(AVAILABLE, OFFLINE);
+        EMERGENCY.next = EnumSet.of(ACTIVE, MAINTENANCE, OFFLINE);
+        MAINTENANCE.next = EnumSet.of(ACTIVE, OPERATIONAL, AVAILABLE, OUTAGE, OFFLINE);
+        OUTAGE.next = EnumSet.of(OPERATIONAL, MAINTENANCE, OFFLINE);
+        OFFLINE.next = EnumSet.of(ACTIVE, OPERATIONAL, AVAILABLE, MAINTENANCE);
+        for (ResourceStatus status : values()) {
+            LEGACY.put(status.label.toLowerCase(Locale.ROOT), status);
+        }
+        for (String alias : new String[] { "online", "running", "in service", "ok", "idle", "ready" }) {
+            LEGACY.put(alias, ACTIVE);
+        }
+        for (String alias : new String[] { "busy", "dispatched", "en route", "on call" }) {
+            LEGACY.put(alias, RESPONDING);
+        }
+        for (String alias : new String[] { "down", "failed", "failure", "blackout" }) {
+            LEGACY.put(alias, OUTAGE);
+        }
+        for (String alias : new String[] { "repair", "under maintenance", "servicing" }) {
+            LEGACY.put(alias, MAINTENANCE);
+        }
+        for (String alias : new String[] { "inactive", "disabled", "retired", "off duty" }) {
+            LEGACY.put(alias, OFFLINE);
+        }
+    }
+
+    private final String label;
+    private final boolean inService;
+    private Set<ResourceStatus> next;
+
+    ResourceStatus(String label, boolean inService) {
+        this.label = label;
+        this.inService = inService;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isInService() {
+        return inService;
+    }
+
+    public boolean canTransitionTo(ResourceStatus status) {
+        return status == this || next.contains(status);
+    }
+
+    public static ResourceStatus parse(String label, Set<ResourceStatus> supported) {
+        ResourceStatus status = label == null ? null : LEGACY.get(label.trim().toLowerCase(Locale.ROOT));
+        if (status != null && supported.contains(status)) {
+            return status;
+        }
+        if (status != null && status.inService) {
+            for (ResourceStatus candidate : supported) {
+                if (candidate.inService) {
+                    return candidate;
+                }
+            }
+        }
+        return OFFLINE;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
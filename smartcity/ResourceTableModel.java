@@ -0,0 +1,123 @@
+package smartcity;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.swing.table.AbstractTableModel;
+
+public class ResourceTableModel extends AbstractTableModel implements RepositoryListener {
+    private static final long serialVersionUID = 1941305537978736861L;
+    private static final String[] COLUMNS = { "ID", "Type", "Location", "Status", "Last Updated" };
+
+    private final transient CityRepository<CityResource> repository;
+    private final transient Set<String> changed = ConcurrentHashMap.newKeySet();
+    private transient List<CityResource> rows = Collections.emptyList();
+    private transient Map<String, Integer> rowIndex;
+    private long version = -1;
+
+    public ResourceTableModel(CityRepository<CityResource> repository) {
+        this.repository = repository;
+    }
+
+    public boolean refresh() {
+        long current = repository.getVersion();
+        if (current != version) {
+            version = current;
+            rows = repository.snapshot();
+            rowIndex = null;
+            changed.clear();
+            fireTableDataChanged();
+            return true;
+        }
+        if (changed.isEmpty()) {
+            return false;
+        }
+        if (changed.size() > rows.size() / 2) {
+            changed.clear();
+            if (!rows.isEmpty()) {
+                fireTableRowsUpdated(0, rows.size() - 1);
+            }
+            return false;
+        }
+        for (Iterator<String> it = changed.iterator(); it.hasNext();) {
+            int row = indexOf(it.next());
+            it.remove();
+            if (row >= 0) {
+                fireTableRowsUpdated(row, row);
+            }
+        }
+        return false;
+    }
+
+    public void markChanged(String resourceID) {
+        changed.add(resourceID);
+    }
+
+    public CityResource getResourceAt(int row) {
+        return rows.get(row);
+    }
+
+    public int indexOf(String resourceID) {
+        if (rowIndex == null) {
+            Map<String, Integer> index = new HashMap<>(rows.size() * 2);
+            repository.forEachRow((id, _, _, _, _) -> index.put(id, index.size()));
+            rowIndex = index;
+        }
+        Integer row = rowIndex.get(resourceID);
+        if (row == null || row >= rows.size() || !rows.get(row).getResourceID().equals(resourceID)) {
+            return -1;
+        }
+        return row;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        CityResource resource = rows.get(row);
+        return switch (column) {
+            case 0 -> resource.getResourceID();
+            case 1 -> resource.getClass().getSimpleName();
+            case 2 -> resource.getLocation();
+            case 3 -> resource.getStatus();
+            case 4 -> resource.lastUpdated.format(CityEvent.TIME_FORMAT);
+            default -> throw new IndexOutOfBoundsException("Column " + column);
+        };
+    }
+
+    @Override
+    public void resourceAdded(CityResource resource) {
+    }
+
+    @Override
+    public void resourceRemoved(String resourceID) {
+        changed.remove(resourceID);
+    }
+
+    @Override
+    public void statusChanged(CityResource resource) {
+        changed.add(resource.getResourceID());
+    }
+
+    @Override
+    public void resourceMoved(CityResource resource, double oldLatitude, double oldLongitude) {
+        changed.add(resource.getResourceID());
+    }
+}
@@ -0,0 +1,161 @@
+package smartcity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+public final class ResponderIndex {
+    private static final int GRID_DIMENSION = 64;
+
+    private final Function<String, ? extends CityResource> lookup;
+    private final Map<String, Responder> byId = new HashMap<>();
+    private final Map<String, SpatialGrid<Responder>> availableByType = new HashMap<>();
+
+    ResponderIndex(Function<String, ? extends CityResource> lookup) {
+        this.lookup = lookup;
+    }
+
+    public List<EmergencyService> nearestAvailable(double latitude, double longitude, int k) {
+        return nearestAvailable(null, latitude, longitude, k);
+    }
+
+    public List<EmergencyService> nearestAvailable(String serviceType, double latitude, double longitude, int k) {
+        List<Responder> found = new ArrayList<>();
+        synchronized (this) {
+            for (SpatialGrid<Responder> grid : grids(serviceType)) {
+                found.addAll(grid.nearest(latitude, longitude, k));
+            }
+        }
+        sortByDistance(found, latitude, longitude);
+        return resolve(found.subList(0, Math.min(k, found.size())));
+    }
+
+    public List<EmergencyService> availableWithin(double latitude, double longitude, double radiusKm) {
+        return availableWithin(null, latitude, longitude, radiusKm);
+    }
+
+    public List<EmergencyService> availableWithin(String serviceType, double latitude, double longitude,
+            double radiusKm) {
+        List<Responder> found = new ArrayList<>();
+        synchronized (this) {
+            for (SpatialGrid<Responder> grid : grids(serviceType)) {
+                found.addAll(grid.withinRadius(latitude, longitude, radiusKm));
+            }
+        }
+        sortByDistance(found, latitude, longitude);
+        return resolve(found);
+    }
+
+    public int availableCount() {
+        return availableCount(null);
+    }
+
+    public synchronized int availableCount(String serviceType) {
+        int count = 0;
+        for (SpatialGrid<Responder> grid : grids(serviceType)) {
+            count += grid.size();
+        }
+        return count;
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    synchronized boolean add(EmergencyService service) {
+        remove(service.getResourceID());
+        Responder responder = new Responder(service.getResourceID(), service.getServiceType(),
+                service.getLatitude(), service.getLongitude());
+        byId.put(responder.id, responder);
+        return setAvailable(responder, service.getStatus() == ResourceStatus.AVAILABLE);
+    }
+
+    synchronized void remove(String resourceID) {
+        Responder responder = byId.remove(resourceID);
+        if (responder != null) {
+            setAvailable(responder, false);
+        }
+    }
+
+    synchronized boolean statusChanged(CityResource resource) {
+        Responder responder = byId.get(resource.getResourceID());
+        return responder != null && setAvailable(responder, resource.getStatus() == ResourceStatus.AVAILABLE);
+    }
+
+    synchronized void moved(CityResource resource) {
+        Responder responder = byId.get(resource.getResourceID());
+        if (responder == null) {
+            return;
+        }
+        boolean available = responder.available;
+        setAvailable(responder, false);
+        responder.latitude = resource.getLatitude();
+        responder.longitude = resource.getLongitude();
+        setAvailable(responder, available);
+    }
+
+    synchronized void clear() {
+        byId.clear();
+        availableByType.clear();
+    }
+
+    private boolean setAvailable(Responder responder, boolean available) {
+        if (responder.available == available) {
+            return false;
+        }
+        responder.available = available;
+        if (available) {
+            availableByType.computeIfAbsent(responder.serviceType, _ -> new SpatialGrid<>(
+                    CityGeography.MIN_LATITUDE, CityGeography.MIN_LONGITUDE, CityGeography.MAX_LATITUDE,
+                    CityGeography.MAX_LONGITUDE, GRID_DIMENSION, GRID_DIMENSION, 1))
+                    .insert(responder, responder.latitude, responder.longitude, 0);
+        } else {
+            availableByType.get(responder.serviceType).remove(responder, responder.latitude, responder.longitude);
+        }
+        return available;
+    }
+
+    private Collection<SpatialGrid<Responder>> grids(String serviceType) {
+        if (serviceType == null) {
+            return availableByType.values();
+        }
+        SpatialGrid<Responder> grid = availableByType.get(serviceType);
+        return grid == null ? Collections.emptyList() : Collections.singletonList(grid);
+    }
+
+    private static void sortByDistance(List<Responder> responders, double latitude, double longitude) {
+        responders.sort(Comparator.comparingDouble(r -> CityGeography.distanceKm(latitude, longitude, r.latitude,
+                r.longitude)));
+    }
+
+    private List<EmergencyService> resolve(List<Responder> responders) {
+        List<EmergencyService> services = new ArrayList<>(responders.size());
+        for (Responder responder : responders) {
+            CityResource resource = lookup.apply(responder.id);
+            if (resource instanceof EmergencyService) {
+                services.add((EmergencyService) resource);
+            }
+        }
+        return services;
+    }
+
+    private static final class Responder {
+        final String id;
+        final String serviceType;
+        double latitude;
+        double longitude;
+        boolean available;
+
+        Responder(String id, String serviceType, double latitude, double longitude) {
+            this.id = id;
+            this.serviceType = serviceType;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package smartcity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SimulationScheduler implements AutoCloseable {
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final ScheduledExecutorService timer;
+    private final TickEngine engine;
+    private final List<TaskStats> stats = new CopyOnWriteArrayList<>();
+    private final List<ScheduledFuture<?>> scheduled = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    public SimulationScheduler(TickEngine engine) {
+        this.engine = engine;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simulation-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public TaskStats schedule(String name, long period, TimeUnit unit, Runnable task) {
+        TaskStats taskStats = new TaskStats(name);
+        stats.add(taskStats);
+        scheduled.add(timer.scheduleAtFixedRate(() -> {
+            if (!running) {
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                taskStats.failures.incrementAndGet();
+                CityEvents.publishFailure(null, "Simulation task " + name, e);
+            } finally {
+                taskStats.record(System.nanoTime() - start);
+            }
+        }, 0, period, unit));
+        return taskStats;
+    }
+
+    public List<TaskStats> getStats() {
+        return new ArrayList<>(stats);
+    }
+
+    public TickEngine getEngine() {
+        return engine;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void shutdown() {
+        running = false;
+        for (ScheduledFuture<?> future : scheduled) {
+            future.cancel(false);
+        }
+        timer.shutdown();
+        try {
+            if (!timer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                timer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            timer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        engine.shutdown();
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    public static final class TaskStats {
+        private final String name;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private volatile long lastNanos;
+
+        TaskStats(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos) {
+            runs.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            lastNanos = nanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getRuns() {
+            return runs.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        public double getAverageMillis() {
+            long count = runs.get();
+            return count == 0 ? 0.0 : totalNanos.get() / (count * 1_000_000.0);
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1_000_000.0;
+        }
+
+        public double getLastMillis() {
+            return lastNanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d runs, avg %.2f ms, max %.2f ms, last %.2f ms, %d failures", name,
+                    getRuns(), getAverageMillis(), getMaxMillis(), getLastMillis(), getFailures());
+        }
+    }
+}
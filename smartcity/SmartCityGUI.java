@@ -6,33 +6,43 @@ import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 
 public class SmartCityGUI extends JFrame {
     private User currentUser;
     private CityRepository<CityResource> repository;
-    private DefaultTableModel tableModel;
+    private transient RepositoryJournal journal;
+    private transient DeltaSegmentStore deltaStore;
+    private final transient PersistenceService persistence = new PersistenceService();
+    private transient RefreshCoordinator refresher;
+    private JProgressBar progressBar;
+    private ResourceTableModel tableModel;
     private JTable resourceTable;
     private CityMapPanel mapPanel;
     private ResourceChartPanel chartPanel;
-    private JTextArea reportArea;
-    private static JTextArea reportAreaStatic;
+    private EventLogPanel eventLog;
     private JLabel metricsLabel;
 
     private JButton addButton, updateButton, deleteButton, reportButton, saveButton, logoutButton;
     private final String DATA_FILE = "city_resources.dat";
+    private static final int LOAD_BATCH_SIZE = 5000;
+    private static final int EVENT_LOG_CAPACITY = 5000;
+    private static final int MAX_REFRESH_RATE = 20;
+    private static final DateTimeFormatter TIME_FORMAT = CityEvent.TIME_FORMAT;
+    private static final DateTimeFormatter REPORT_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private boolean isAdmin = false;
     private boolean hasUnsavedChanges = false;
-    private final AtomicBoolean running = new AtomicBoolean(true);
+    private transient SimulationScheduler scheduler;
+    private transient CityEvents.Subscription eventSubscription;
 
     public SmartCityGUI(User user) {
         this.currentUser = user;
         this.isAdmin = currentUser.getRole().equals("ADMIN");
-        this.repository = new CityRepository<>();
+        this.repository = new CityRepository<>(true);
         CityResource.setRepository(repository);
 
         setTitle("Smart City Resource Management System"
@@ -47,8 +57,10 @@ public class SmartCityGUI extends JFrame {
             createCenterPanel();
             createBottomPanel();
             configureUserAccess();
+            refresher = new RefreshCoordinator(MAX_REFRESH_RATE, this::refreshTable);
+            refresher.start();
+            deltaStore = new DeltaSegmentStore(DATA_FILE, repository);
             loadFromFileOrInit();
-            refreshTable();
         }
 
         pack();
@@ -63,49 +75,107 @@ public class SmartCityGUI extends JFrame {
     private void loadFromFileOrInit() {
         File dataFile = new File(DATA_FILE);
         if (dataFile.exists()) {
-            try {
-                repository.loadFromFile(DATA_FILE);
-                if (reportArea != null) {
-                    reportArea.append("Data loaded successfully from " + DATA_FILE + " at " +
-                            LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
-            } catch (IOException e) {
-                if (reportArea != null) {
-                    reportArea.append("IO Error loading " + DATA_FILE + ": " + e.getMessage()
-                            + ". Initializing default data at " +
-                            LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
-                JOptionPane.showMessageDialog(this,
-                        "IO Error loading data: " + e.getMessage() + ". Running with default settings.", "Error",
-                        JOptionPane.ERROR_MESSAGE);
-                initializeSampleData();
-            } catch (ClassNotFoundException e) {
-                if (reportArea != null) {
-                    reportArea.append("ClassNotFoundError loading " + DATA_FILE + ": " + e.getMessage()
-                            + ". Initializing default data at " +
-                            LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
-                JOptionPane.showMessageDialog(this,
-                        "ClassNotFoundError loading data: " + e.getMessage() + ". Running with default settings.",
-                        "Error", JOptionPane.ERROR_MESSAGE);
-                initializeSampleData();
-            } catch (Exception e) {
-                if (reportArea != null) {
-                    reportArea.append("Unexpected error loading " + DATA_FILE + ": " + e.getMessage()
-                            + ". Initializing default data at " +
-                            LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
+            saveButton.setEnabled(false);
+            showProgress("Loading", 0, 1);
+            persistence.open(repository, DATA_FILE, LOAD_BATCH_SIZE, (done, total) -> {
+                showProgress("Loading", done, total);
+                requestRefresh();
+            }).whenComplete((_, failure) -> SwingUtilities.invokeLater(() -> loadFinished(failure)));
+        } else {
+            log("No data file found. Initializing default data");
+            initializeSampleData();
+            dataReady();
+        }
+    }
+
+    private void loadFinished(Throwable failure) {
+        try {
+            if (failure != null) {
+                throw PersistenceService.unwrap(failure);
+            }
+            log("Data loaded successfully from " + DATA_FILE);
+        } catch (IOException e) {
+            log("IO Error loading " + DATA_FILE + ": " + e.getMessage()
+                    + ". Initializing default data");
+            JOptionPane.showMessageDialog(this,
+                    "IO Error loading data: " + e.getMessage() + ". Running with default settings.", "Error",
+                    JOptionPane.ERROR_MESSAGE);
+            initializeSampleData();
+        } catch (ClassNotFoundException e) {
+            log("ClassNotFoundError loading " + DATA_FILE + ": " + e.getMessage()
+                    + ". Initializing default data");
+            JOptionPane.showMessageDialog(this,
+                    "ClassNotFoundError loading data: " + e.getMessage() + ". Running with default settings.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            initializeSampleData();
+        } catch (Throwable e) {
+            log("Unexpected error loading " + DATA_FILE + ": " + e.getMessage()
+                    + ". Initializing default data");
+            JOptionPane.showMessageDialog(this,
+                    "Unexpected error loading data: " + e.getMessage() + ". Running with default settings.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            initializeSampleData();
+        }
+        hideProgress();
+        dataReady();
+    }
+
+    private void dataReady() {
+        saveButton.setEnabled(isAdmin);
+        requestRefresh();
+        if (isAdmin) {
+            persistence.submit(() -> RepositoryJournal.open(DATA_FILE, repository))
+                    .whenComplete((opened, failure) -> SwingUtilities.invokeLater(() -> journalOpened(opened, failure)));
+        } else {
+            persistence.submit(() -> RepositoryJournal.replay(DATA_FILE, repository))
+                    .whenComplete((replayed, failure) -> SwingUtilities.invokeLater(() -> {
+                        if (failure != null) {
+                            log("Journal replay failed for " + DATA_FILE + ": "
+                                    + PersistenceService.unwrap(failure).getMessage());
+                        } else if (replayed > 0) {
+                            log("Replayed " + replayed + " journal records from " + DATA_FILE);
+                        }
+                        requestRefresh();
+                    }));
+        }
+    }
+
+    private void journalOpened(RepositoryJournal opened, Throwable failure) {
+        if (failure == null) {
+            journal = opened;
+            opened.setFailureListener((action, e) -> SwingUtilities.invokeLater(() -> {
+                hasUnsavedChanges = true;
+                if (eventLog != null) {
+                    eventLog.append(new CityEvent(CityEvent.Type.ALERT, null, action + " failed: " + e.getMessage()
+                            + ". Changes are kept only until the next save"));
                 }
-                JOptionPane.showMessageDialog(this,
-                        "Unexpected error loading data: " + e.getMessage() + ". Running with default settings.",
-                        "Error", JOptionPane.ERROR_MESSAGE);
-                initializeSampleData();
+            }));
+            if (opened.hasRecoveredChanges()) {
+                hasUnsavedChanges = true;
+                log("Recovered unsaved changes from the journal for " + DATA_FILE);
             }
+            requestRefresh();
         } else {
-            if (reportArea != null) {
-                reportArea.append("No data file found. Initializing default data at " +
-                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
+            log("Journal unavailable for " + DATA_FILE + ": " + PersistenceService.unwrap(failure).getMessage()
+                    + ". Changes are kept only until the next save");
+        }
+    }
+
+    private void showProgress(String task, long done, long total) {
+        SwingUtilities.invokeLater(() -> {
+            if (progressBar == null) {
+                return;
             }
-            initializeSampleData();
+            int percent = total <= 0 ? 100 : (int) (done * 100 / total);
+            progressBar.setValue(percent);
+            progressBar.setString(task + " " + done + "/" + total);
+            progressBar.setVisible(true);
+        });
+    }
+
+    private void hideProgress() {
+        if (progressBar != null) {
+            progressBar.setVisible(false);
         }
     }
 
@@ -252,8 +322,8 @@ public class SmartCityGUI extends JFrame {
 
     private void createCenterPanel() {
         JPanel centerPanel = new JPanel(new BorderLayout());
-        String[] columns = { "ID", "Type", "Location", "Status", "Last Updated" };
-        tableModel = new DefaultTableModel(columns, 0);
+        tableModel = new ResourceTableModel(repository);
+        repository.addListener(tableModel);
         resourceTable = new JTable(tableModel);
         resourceTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         resourceTable.getSelectionModel().addListSelectionListener(e -> {
@@ -264,6 +334,7 @@ public class SmartCityGUI extends JFrame {
         JScrollPane tableScrollPane = new JScrollPane(resourceTable);
         tableScrollPane.setPreferredSize(new Dimension(600, 300));
         mapPanel = new CityMapPanel();
+        repository.addListener(mapPanel);
         chartPanel = new ResourceChartPanel();
         JPanel rightPanel = new JPanel(new BorderLayout());
         rightPanel.add(mapPanel, BorderLayout.CENTER);
@@ -275,35 +346,48 @@ public class SmartCityGUI extends JFrame {
     }
 
     private void createBottomPanel() {
-        if (reportArea == null) {
+        if (eventLog == null) {
             JPanel bottomPanel = new JPanel(new BorderLayout());
-            reportArea = new JTextArea(8, 50);
-            reportAreaStatic = reportArea;
-            reportArea.setEditable(false);
-            reportArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-            JScrollPane reportScrollPane = new JScrollPane(reportArea);
-            reportScrollPane.setBorder(BorderFactory.createTitledBorder("Reports & Alerts"));
+            eventLog = new EventLogPanel(EVENT_LOG_CAPACITY);
+            eventLog.setBorder(BorderFactory.createTitledBorder("Reports & Alerts"));
+            eventSubscription = CityEvents.subscribe("event-log", this::appendEvents);
             JPanel metricsPanel = new JPanel(new FlowLayout());
             metricsLabel = new JLabel("City Metrics: Loading...");
             metricsPanel.add(metricsLabel);
+            progressBar = new JProgressBar(0, 100);
+            progressBar.setStringPainted(true);
+            progressBar.setVisible(false);
+            metricsPanel.add(progressBar);
             metricsPanel.setBorder(BorderFactory.createTitledBorder("Real-time Metrics"));
-            bottomPanel.add(reportScrollPane, BorderLayout.CENTER);
+            bottomPanel.add(eventLog, BorderLayout.CENTER);
             bottomPanel.add(metricsPanel, BorderLayout.SOUTH);
             add(bottomPanel, BorderLayout.SOUTH);
         }
     }
 
+    private void appendEvents(List<CityEvent> batch) {
+        SwingUtilities.invokeLater(() -> eventLog.append(batch));
+    }
+
+    private void log(String message) {
+        log(null, message);
+    }
+
+    private void log(String resourceID, String message) {
+        if (eventLog != null) {
+            eventLog.append(new CityEvent(CityEvent.Type.INFO, resourceID, message));
+        }
+    }
+
     private void configureUserAccess() {
         addButton.setEnabled(isAdmin);
         updateButton.setEnabled(isAdmin);
         deleteButton.setEnabled(isAdmin);
         saveButton.setEnabled(isAdmin);
         if (!isAdmin && currentUser.getRole().equals("PUBLIC")) {
-            if (reportArea != null) {
-                reportArea.append("Running in PUBLIC mode - View only access\n");
-                reportArea.append("Dynamic simulation started - Real-time updates every 5 seconds\n");
-                reportArea.append("Emergency scenarios will be simulated every 30 seconds\n");
-            }
+            log("Running in PUBLIC mode - View only access");
+            log("Dynamic simulation started - Real-time updates every 5 seconds");
+            log("Emergency scenarios will be simulated every 30 seconds");
         }
     }
 
@@ -338,7 +422,7 @@ public class SmartCityGUI extends JFrame {
 
         JTextField idFieldDialog = new JTextField(15);
         JTextField locationFieldDialog = new JTextField(15);
-        JTextField statusFieldDialog = new JTextField(15);
+        JComboBox<ResourceStatus> statusComboDialog = new JComboBox<>();
         JComboBox<String> vehicleTypeComboDialog = new JComboBox<>(new String[] { "Bus", "Train" });
         JTextField passengerCapacityFieldDialog = new JTextField(10);
         JTextField fuelConsumptionRateFieldDialog = new JTextField(10);
@@ -350,6 +434,10 @@ public class SmartCityGUI extends JFrame {
 
         resourceTypeCombo.addActionListener(_ -> {
             specificPanel.removeAll();
+            statusComboDialog.removeAllItems();
+            for (ResourceStatus status : statusesFor((String) resourceTypeCombo.getSelectedItem())) {
+                statusComboDialog.addItem(status);
+            }
             gbcSpecific.gridy = 0;
             if ("Transport".equals(resourceTypeCombo.getSelectedItem())) {
                 gbcSpecific.gridx = 0;
@@ -367,7 +455,7 @@ public class SmartCityGUI extends JFrame {
                 gbcSpecific.gridy = 2;
                 specificPanel.add(new JLabel("Status:"), gbcSpecific);
                 gbcSpecific.gridx = 1;
-                specificPanel.add(statusFieldDialog, gbcSpecific);
+                specificPanel.add(statusComboDialog, gbcSpecific);
 
                 gbcSpecific.gridx = 0;
                 gbcSpecific.gridy = 3;
@@ -402,7 +490,7 @@ public class SmartCityGUI extends JFrame {
                 gbcSpecific.gridy = 2;
                 specificPanel.add(new JLabel("Status:"), gbcSpecific);
                 gbcSpecific.gridx = 1;
-                specificPanel.add(statusFieldDialog, gbcSpecific);
+                specificPanel.add(statusComboDialog, gbcSpecific);
 
                 gbcSpecific.gridx = 0;
                 gbcSpecific.gridy = 3;
@@ -431,7 +519,7 @@ public class SmartCityGUI extends JFrame {
                 gbcSpecific.gridy = 2;
                 specificPanel.add(new JLabel("Status:"), gbcSpecific);
                 gbcSpecific.gridx = 1;
-                specificPanel.add(statusFieldDialog, gbcSpecific);
+                specificPanel.add(statusComboDialog, gbcSpecific);
 
                 gbcSpecific.gridx = 0;
                 gbcSpecific.gridy = 3;
@@ -459,30 +547,53 @@ public class SmartCityGUI extends JFrame {
         gbc.gridwidth = 2;
         addDialog.add(specificPanel, gbc);
 
+        gbc.gridwidth = 1;
         gbc.gridy = 3;
+        addDialog.add(new JLabel("Latitude (optional):"), gbc);
+        JTextField latitudeFieldDialog = new JTextField(15);
+        gbc.gridx = 1;
+        addDialog.add(latitudeFieldDialog, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        addDialog.add(new JLabel("Longitude (optional):"), gbc);
+        JTextField longitudeFieldDialog = new JTextField(15);
+        gbc.gridx = 1;
+        addDialog.add(longitudeFieldDialog, gbc);
+
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        gbc.gridwidth = 2;
         JButton addResourceButton = new JButton("Add Resource");
         addResourceButton.setFont(new Font("Arial", Font.BOLD, 14));
         addResourceButton.addActionListener(_ -> {
             String id = idFieldDialog.getText().trim();
             String location = locationFieldDialog.getText().trim();
-            String status = statusFieldDialog.getText().trim();
+            ResourceStatus status = (ResourceStatus) statusComboDialog.getSelectedItem();
             String resourceType = (String) resourceTypeCombo.getSelectedItem();
-            if (id.isEmpty() || location.isEmpty() || status.isEmpty()) {
+            String latitudeText = latitudeFieldDialog.getText().trim();
+            String longitudeText = longitudeFieldDialog.getText().trim();
+            if (id.isEmpty() || location.isEmpty() || status == null) {
                 JOptionPane.showMessageDialog(addDialog, "Please fill all required fields", "Error",
                         JOptionPane.ERROR_MESSAGE);
                 return;
             }
+            if (latitudeText.isEmpty() != longitudeText.isEmpty()) {
+                JOptionPane.showMessageDialog(addDialog, "Enter both latitude and longitude, or leave both blank",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             try {
-                CityResource resource = createResourceByType(id, location, status, resourceType, vehicleTypeComboDialog,
+                CityResource resource = createResourceByType(id, location, status.getLabel(), resourceType, vehicleTypeComboDialog,
                         passengerCapacityFieldDialog, fuelConsumptionRateFieldDialog, energyOutputFieldDialog,
                         powerTypeComboDialog, serviceTypeComboDialog, responseTimeFieldDialog, callsHandledFieldDialog);
+                if (!latitudeText.isEmpty()) {
+                    resource.setCoordinates(parseLatitude(latitudeText), parseLongitude(longitudeText));
+                }
                 repository.add(resource);
                 hasUnsavedChanges = true;
-                refreshTable();
-                if (reportArea != null) {
-                    reportArea.append("Added new resource: " + resource.toString() + " at " +
-                            LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
+                requestRefresh();
+                log(resource.getResourceID(), "Added new resource: " + resource.toString());
                 addDialog.dispose();
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(addDialog, "Error adding resource: " + ex.getMessage(), "Error",
@@ -491,11 +602,22 @@ public class SmartCityGUI extends JFrame {
         });
         addDialog.add(addResourceButton, gbc);
 
-        addDialog.setSize(400, 350);
+        addDialog.setSize(400, 430);
         addDialog.setLocationRelativeTo(this);
         addDialog.setVisible(true);
     }
 
+    private static Set<ResourceStatus> statusesFor(String resourceType) {
+        if ("Transport".equals(resourceType)) {
+            return TransportUnit.STATUSES;
+        } else if ("Power".equals(resourceType)) {
+            return PowerStation.STATUSES;
+        } else if ("Emergency".equals(resourceType)) {
+            return EmergencyService.STATUSES;
+        }
+        return Set.of();
+    }
+
     private CityResource createResourceByType(String id, String location, String status, String resourceType,
             JComboBox<String> vehicleTypeCombo, JTextField passengerCapacityField, JTextField fuelConsumptionRateField,
             JTextField energyOutputField, JComboBox<String> powerTypeCombo, JComboBox<String> serviceTypeCombo,
@@ -523,6 +645,27 @@ public class SmartCityGUI extends JFrame {
         throw new IllegalArgumentException("Unknown resource type: " + resourceType);
     }
 
+    private static double parseLatitude(String text) {
+        return parseCoordinate(text, "Latitude", CityGeography.MIN_LATITUDE, CityGeography.MAX_LATITUDE);
+    }
+
+    private static double parseLongitude(String text) {
+        return parseCoordinate(text, "Longitude", CityGeography.MIN_LONGITUDE, CityGeography.MAX_LONGITUDE);
+    }
+
+    private static double parseCoordinate(String text, String name, double min, double max) {
+        double value;
+        try {
+            value = Double.parseDouble(text);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid " + name.toLowerCase() + ": " + text);
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(String.format("%s must be between %.2f and %.2f", name, min, max));
+        }
+        return value;
+    }
+
     private void updateResource(ActionEvent e) {
         if (!isAdmin)
             return;
@@ -560,15 +703,37 @@ public class SmartCityGUI extends JFrame {
             gbc.gridx = 0;
             gbc.gridy = 2;
             updateDialog.add(new JLabel("Status:"), gbc);
-            JTextField statusFieldDialog = new JTextField(resource.getStatus(), 15);
+            JComboBox<ResourceStatus> statusComboDialog = new JComboBox<>();
+            for (ResourceStatus status : resource.getSupportedStatuses()) {
+                if (resource.canTransitionTo(status)) {
+                    statusComboDialog.addItem(status);
+                }
+            }
+            statusComboDialog.setSelectedItem(resource.getStatus());
             gbc.gridx = 1;
-            updateDialog.add(statusFieldDialog, gbc);
+            updateDialog.add(statusComboDialog, gbc);
+
+            gbc.gridx = 0;
+            gbc.gridy = 3;
+            updateDialog.add(new JLabel("Latitude:"), gbc);
+            String shownLatitude = String.valueOf(resource.getLatitude());
+            JTextField latitudeFieldDialog = new JTextField(shownLatitude, 15);
+            gbc.gridx = 1;
+            updateDialog.add(latitudeFieldDialog, gbc);
+
+            gbc.gridx = 0;
+            gbc.gridy = 4;
+            updateDialog.add(new JLabel("Longitude:"), gbc);
+            String shownLongitude = String.valueOf(resource.getLongitude());
+            JTextField longitudeFieldDialog = new JTextField(shownLongitude, 15);
+            gbc.gridx = 1;
+            updateDialog.add(longitudeFieldDialog, gbc);
 
             JTextField passengerField = null;
             if (resource instanceof TransportUnit) {
                 TransportUnit transport = (TransportUnit) resource;
                 gbc.gridx = 0;
-                gbc.gridy = 3;
+                gbc.gridy = 5;
                 updateDialog.add(new JLabel("Current Passengers:"), gbc);
                 passengerField = new JTextField(String.valueOf(transport.getCurrentPassengers()), 15);
                 gbc.gridx = 1;
@@ -578,12 +743,32 @@ public class SmartCityGUI extends JFrame {
             JTextField finalPassengerField = passengerField;
 
             gbc.gridx = 0;
-            gbc.gridy = 4;
+            gbc.gridy = 6;
             gbc.gridwidth = 2;
             JButton saveChangesButton = new JButton("Save Changes");
             saveChangesButton.addActionListener(_ -> {
-                resource.location = locationFieldDialog.getText().trim();
-                resource.setStatus(statusFieldDialog.getText().trim());
+                String latitudeText = latitudeFieldDialog.getText().trim();
+                String longitudeText = longitudeFieldDialog.getText().trim();
+                boolean moved = !latitudeText.equals(shownLatitude) || !longitudeText.equals(shownLongitude);
+                double latitude;
+                double longitude;
+                try {
+                    latitude = parseLatitude(latitudeText);
+                    longitude = parseLongitude(longitudeText);
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(updateDialog, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                try {
+                    resource.setStatus((ResourceStatus) statusComboDialog.getSelectedItem());
+                } catch (IllegalStateException ex) {
+                    JOptionPane.showMessageDialog(updateDialog, ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                resource.setLocation(locationFieldDialog.getText().trim());
+                if (moved) {
+                    resource.setCoordinates(latitude, longitude);
+                }
                 if (resource instanceof TransportUnit && finalPassengerField != null) {
                     TransportUnit transport = (TransportUnit) resource;
                     try {
@@ -596,11 +781,9 @@ public class SmartCityGUI extends JFrame {
                     }
                 }
                 hasUnsavedChanges = true;
-                refreshTable();
-                if (reportArea != null) {
-                    reportArea.append("Updated resource " + resourceId + " status to: " + resource.getStatus() +
-                            " at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
+                tableModel.markChanged(resourceId);
+                requestRefresh();
+                log(resourceId, "Updated resource " + resourceId + " status to: " + resource.getStatus());
                 updateDialog.dispose();
             });
             updateDialog.add(saveChangesButton, gbc);
@@ -627,11 +810,8 @@ public class SmartCityGUI extends JFrame {
         if (confirm == JOptionPane.YES_OPTION) {
             repository.remove(resourceId);
             hasUnsavedChanges = true;
-            refreshTable();
-            if (reportArea != null) {
-                reportArea.append("Deleted resource: " + resourceId + " at " +
-                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-            }
+            requestRefresh();
+            log(resourceId, "Deleted resource: " + resourceId);
         }
     }
 
@@ -644,7 +824,7 @@ public class SmartCityGUI extends JFrame {
             CityResource resource = repository.get(resourceId);
             if (resource != null) {
                 JDialog reportDialog = new JDialog(this, "Resource Report - "
-                        + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")), true);
+                        + LocalDateTime.now().format(REPORT_TIME_FORMAT), true);
                 reportDialog.setLayout(new BorderLayout());
                 JTextArea reportTextArea = new JTextArea(resource.generateUsageReport());
                 reportTextArea.setEditable(false);
@@ -663,34 +843,63 @@ public class SmartCityGUI extends JFrame {
     private void generateCityReport() {
         StringBuilder report = new StringBuilder();
         report.append("Resource Report - ")
-                .append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
-        ArrayList<CityResource> resources = repository.getAll();
-        report.append("Transport Units: ").append(resources.stream().filter(r -> r instanceof TransportUnit).count())
-                .append("\n");
-        report.append("Power Stations: ").append(resources.stream().filter(r -> r instanceof PowerStation).count())
-                .append("\n");
-        for (CityResource resource : resources) {
-            if (resource instanceof PowerStation) {
-                PowerStation ps = (PowerStation) resource;
-                report.append("Power Station ").append(ps.getResourceID()).append(": ").append(ps.getEnergyOutput())
-                        .append("MW output, Type: ").append(ps.getPowerType()).append("\n");
+                .append(LocalDateTime.now().format(REPORT_TIME_FORMAT)).append("\n");
+        CityMetrics metrics = repository.getMetrics();
+        Map<String, CityMetrics.Snapshot> byType = metrics.snapshotByType();
+        report.append("Transport Units: ").append(countOf(byType, TransportUnit.class)).append("\n");
+        report.append("Power Stations: ").append(countOf(byType, PowerStation.class)).append("\n");
+        for (PowerStation ps : repository.snapshotOfType(PowerStation.class)) {
+            report.append("Power Station ").append(ps.getResourceID()).append(": ").append(ps.getEnergyOutput())
+                    .append("MW output, Type: ").append(ps.getPowerType()).append("\n");
+        }
+        report.append("Emergency Services: ").append(countOf(byType, EmergencyService.class)).append(" (")
+                .append(repository.getResponders().availableCount()).append(" available)\n");
+        report.append(repository.getDispatcher()).append("\n\n");
+        report.append("Status Summary:\n");
+        StatusIndex statusIndex = repository.getStatusIndex();
+        for (Class<?> type : List.of(TransportUnit.class, PowerStation.class, EmergencyService.class)) {
+            StringBuilder line = new StringBuilder();
+            for (ResourceStatus status : ResourceStatus.values()) {
+                int count = statusIndex.count(type.getSimpleName(), status);
+                if (count > 0) {
+                    line.append(line.length() == 0 ? "" : ", ").append(status).append(" ").append(count);
+                }
+            }
+            if (line.length() > 0) {
+                report.append("- ").append(type.getSimpleName()).append(": ").append(line).append("\n");
             }
         }
-        report.append("Emergency Services: ")
-                .append(resources.stream().filter(r -> r instanceof EmergencyService).count()).append("\n\n");
+        report.append("\n");
         report.append("Maintenance Costs:\n");
-        for (CityResource resource : resources) {
-            report.append("- ").append(resource.getResourceID()).append(": $")
-                    .append(String.format("%.2f", resource.calculateMaintenanceCost())).append("\n");
+        for (Map.Entry<String, CityMetrics.Snapshot> type : byType.entrySet()) {
+            report.append("- ").append(type.getKey()).append(": $")
+                    .append(String.format("%.2f", type.getValue().getMaintenanceCost())).append("\n");
         }
-        report.append("Total Maintenance Cost: $").append(String.format("%.2f", CityResource.getTotalMaintenanceCost()))
+        CityMetrics.Snapshot totals = metrics.snapshot();
+        report.append("Total Maintenance Cost: $").append(String.format("%.2f", totals.getMaintenanceCost()))
                 .append("\n");
-        report.append("Total Passengers: ").append(CityResource.getTotalPassengers()).append("\n");
-        report.append("Total Energy Usage: ").append(String.format("%.2f", CityResource.getTotalEnergyUsage()))
-                .append(" MW\n");
+        report.append("Total Passengers: ").append(totals.getPassengers()).append("\n");
+        report.append("Total Energy Usage: ").append(String.format("%.2f", totals.getEnergyConsumed()))
+                .append(" MW\n\n");
+        report.append("By Zone:\n");
+        for (Map.Entry<String, CityMetrics.Snapshot> zone : metrics.snapshotByZone().entrySet()) {
+            report.append(String.format("- %s: %d resources, %d passengers, %.2f MW%n", zone.getKey(),
+                    zone.getValue().getResources(), zone.getValue().getPassengers(),
+                    zone.getValue().getEnergyConsumed()));
+        }
+        if (scheduler != null) {
+            report.append("\nSimulation Tasks:\n");
+            for (SimulationScheduler.TaskStats task : scheduler.getStats()) {
+                report.append("- ").append(task).append("\n");
+            }
+        }
+        if (refresher != null) {
+            report.append("- ").append(refresher).append("\n");
+        }
+        report.append("- ").append(repository.getTimers()).append("\n");
 
         JDialog reportDialog = new JDialog(this,
-                "Resource Report - " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")),
+                "Resource Report - " + LocalDateTime.now().format(REPORT_TIME_FORMAT),
                 true);
         reportDialog.setLayout(new BorderLayout());
         JTextArea reportTextArea = new JTextArea(report.toString());
@@ -705,62 +914,79 @@ public class SmartCityGUI extends JFrame {
         reportDialog.setVisible(true);
     }
 
+    private static long countOf(Map<String, CityMetrics.Snapshot> byType, Class<? extends CityResource> type) {
+        CityMetrics.Snapshot snapshot = byType.get(type.getSimpleName());
+        return snapshot == null ? 0 : snapshot.getResources();
+    }
+
     private void saveData(ActionEvent e) {
+        saveAsync();
+    }
+
+    private CompletableFuture<Integer> saveAsync() {
         if (!isAdmin)
-            return;
-        try {
-            repository.saveToFile(DATA_FILE);
-            hasUnsavedChanges = false;
-            JOptionPane.showMessageDialog(this, "Data saved successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            if (reportArea != null) {
-                reportArea.append("Data saved to " + DATA_FILE + " at "
-                        + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-            }
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(this, "Error saving data: " + ex.getMessage(), "Error",
-                    JOptionPane.ERROR_MESSAGE);
-            if (reportArea != null) {
-                reportArea.append("Error saving data to " + DATA_FILE + ": " + ex.getMessage() + " at " +
-                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
+            return CompletableFuture.completedFuture(0);
+        int pending = repository.getPendingChangeCount();
+        saveButton.setEnabled(false);
+        showProgress("Saving", 0, pending);
+        CompletableFuture<Integer> saved = persistence.save(deltaStore, journal,
+                (done, total) -> showProgress("Saving", done, total));
+        saved.whenComplete((_, failure) -> SwingUtilities.invokeLater(() -> {
+            saveButton.setEnabled(true);
+            hideProgress();
+            if (failure == null) {
+                hasUnsavedChanges = false;
+                JOptionPane.showMessageDialog(this, "Data saved successfully!", "Success",
+                        JOptionPane.INFORMATION_MESSAGE);
+                log("Data saved to " + DATA_FILE + " (" + pending + " changed records)");
+            } else {
+                Throwable ex = PersistenceService.unwrap(failure);
+                JOptionPane.showMessageDialog(this, "Error saving data: " + ex.getMessage(), "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                log("Error saving data to " + DATA_FILE + ": " + ex.getMessage());
             }
-        }
+        }));
+        return saved;
     }
 
     private void loadSelectedResource() {
     }
 
+    private void requestRefresh() {
+        if (refresher != null) {
+            refresher.requestRefresh();
+        }
+    }
+
     private void refreshTable() {
         if (tableModel == null) {
             return;
         }
-        tableModel.setRowCount(0);
-        ArrayList<CityResource> allResources = repository.getAll();
-        for (CityResource resource : allResources) {
-            Object[] row = {
-                    resource.getResourceID(),
-                    resource.getClass().getSimpleName(),
-                    resource.getLocation(),
-                    resource.getStatus(),
-                    resource.lastUpdated.format(DateTimeFormatter.ofPattern("HH:mm:ss"))
-            };
-            tableModel.addRow(row);
+        int selectedRow = resourceTable.getSelectedRow();
+        String selectedId = selectedRow < 0 ? null : tableModel.getResourceAt(selectedRow).getResourceID();
+        if (tableModel.refresh() && selectedId != null) {
+            int row = tableModel.indexOf(selectedId);
+            if (row >= 0) {
+                resourceTable.setRowSelectionInterval(row, row);
+            }
         }
         if (mapPanel != null)
-            mapPanel.updateResources(allResources);
+            mapPanel.updateResources(repository);
         if (chartPanel != null)
-            chartPanel.updateResources(allResources);
+            chartPanel.updateCounts(repository.getMetrics().snapshotByType());
         updateMetrics();
     }
 
     private void updateMetrics() {
         if (metricsLabel != null) {
+            CityMetrics.Snapshot snapshot = repository.getMetrics().snapshot();
             String metrics = String.format(
                     "Resources: %d | Passengers: %d | Energy: %.2f MW | Maintenance: $%.2f | Emergencies: %d",
-                    CityResource.getTotalResources(),
-                    CityResource.getTotalPassengers(),
-                    CityResource.getTotalEnergyUsage(),
-                    CityResource.getTotalMaintenanceCost(),
-                    EmergencyService.getTotalEmergencyResponses());
+                    snapshot.getResources(),
+                    snapshot.getPassengers(),
+                    snapshot.getEnergyConsumed(),
+                    snapshot.getMaintenanceCost(),
+                    snapshot.getEmergencyResponses());
             metricsLabel.setText(metrics);
         }
     }
@@ -783,104 +1009,9 @@ public class SmartCityGUI extends JFrame {
     }
 
     private void startDynamicUpdates() {
-        new Thread(() -> {
-            while (running.get()) {
-                simulateRealTimeUpdates();
-                SwingUtilities.invokeLater(this::refreshTable);
-                try {
-                    Thread.sleep(5000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }).start();
-
-        new Thread(() -> {
-            while (running.get()) {
-                for (CityResource resource : repository.getAll()) {
-                    if (resource instanceof TransportUnit) {
-                        TransportUnit unit = (TransportUnit) resource;
-                        int change = new Random().nextInt(11) - 5;
-                        unit.adjustRouteBasedOnTraffic(change);
-                    }
-                }
-                SwingUtilities.invokeLater(this::refreshTable);
-                try {
-                    Thread.sleep(7000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }).start();
-
-        new Thread(() -> {
-            while (running.get()) {
-                simulateEmergencyScenario();
-                SwingUtilities.invokeLater(this::refreshTable);
-                try {
-                    Thread.sleep(30000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }).start();
-    }
-
-    private void simulateRealTimeUpdates() {
-        Random rand = new Random();
-        for (CityResource resource : repository.getAll()) {
-            if (resource instanceof PowerStation) {
-                PowerStation power = (PowerStation) resource;
-                if (rand.nextDouble() < 0.05) {
-                    if (power.getStatus().equals("Operational")) {
-                        power.setStatus("Maintenance");
-                        if (reportArea != null) {
-                            reportArea.append("POWER ALERT: " + power.getResourceID() + " requires maintenance at " +
-                                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                        }
-                    }
-                }
-            }
-            if (resource instanceof EmergencyService) {
-                EmergencyService emergency = (EmergencyService) resource;
-                if (rand.nextDouble() < 0.08 && emergency.getStatus().equals("Available")) {
-                    emergency.sendEmergencyAlert("Routine patrol dispatch");
-                }
-            }
-        }
-    }
-
-    private void simulateEmergencyScenario() {
-        Random rand = new Random();
-        ArrayList<CityResource> allResources = repository.getAll();
-        if (!allResources.isEmpty()) {
-            CityResource randomResource = allResources.get(rand.nextInt(allResources.size()));
-            if (randomResource instanceof PowerStation && rand.nextDouble() < 0.3) {
-                PowerStation power = (PowerStation) randomResource;
-                power.simulateOutage();
-                if (reportArea != null) {
-                    reportArea.append("EMERGENCY SCENARIO: Power outage at " + power.getLocation() +
-                            " at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
-            } else if (randomResource instanceof TransportUnit && rand.nextDouble() < 0.2) {
-                TransportUnit transport = (TransportUnit) randomResource;
-                transport.setStatus("Emergency");
-                if (reportArea != null) {
-                    reportArea.append("TRANSPORT EMERGENCY: " + transport.getResourceID() + " at "
-                            + transport.getLocation() +
-                            " at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
-                }
-                for (CityResource resource : allResources) {
-                    if (resource instanceof EmergencyService) {
-                        EmergencyService emergency = (EmergencyService) resource;
-                        if (emergency.getStatus().equals("Available")) {
-                            emergency.sendEmergencyAlert("Transport emergency response needed");
-                            break;
-                        }
-                    }
-                }
-            }
-        }
+        scheduler = new SimulationScheduler(new TickEngine(System.nanoTime()));
+        new CitySimulation(repository, scheduler.getEngine())
+                .schedule(scheduler, this::requestRefresh);
     }
 
     private void logout(ActionEvent e) {
@@ -890,16 +1021,52 @@ public class SmartCityGUI extends JFrame {
             if (result == JOptionPane.CANCEL_OPTION)
                 return;
             if (result == JOptionPane.YES_OPTION) {
-                saveData(null);
+                logoutButton.setEnabled(false);
+                saveAsync().whenComplete((_, failure) -> SwingUtilities.invokeLater(() -> {
+                    if (failure == null) {
+                        finishLogout();
+                    } else {
+                        logoutButton.setEnabled(true);
+                    }
+                }));
+                return;
+            } else if (journal != null) {
+                try {
+                    journal.discard();
+                    journal = null;
+                } catch (IOException ex) {
+                    CityEvents.publishFailure(null, "Discarding the journal", ex);
+                }
             }
         }
-        running.set(false);
-        dispose();
-        SwingUtilities.invokeLater(() -> new SmartCityGUI(new User("guest", "GUEST")).setVisible(true));
+        finishLogout();
     }
 
-    public static JTextArea getReportArea() {
-        return reportAreaStatic;
+    private void finishLogout() {
+        if (refresher != null) {
+            refresher.stop();
+        }
+        if (tableModel != null) {
+            repository.removeListener(tableModel);
+        }
+        if (mapPanel != null) {
+            repository.removeListener(mapPanel);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (deltaStore != null) {
+            deltaStore.close();
+        }
+        persistence.shutdown();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (eventSubscription != null) {
+            eventSubscription.close();
+        }
+        dispose();
+        SwingUtilities.invokeLater(() -> new SmartCityGUI(new User("guest", "GUEST")).setVisible(true));
     }
 
     public static void main(String[] args) {
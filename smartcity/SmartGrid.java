@@ -2,13 +2,33 @@ package smartcity;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
-public class SmartGrid implements Serializable {
+public class SmartGrid implements Serializable, RepositoryListener {
     private static final long serialVersionUID = 1941305537978736861L;
+    private static final int UNSERVED = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
     private String gridID;
     private ArrayList<PowerStation> powerStations;
     private ArrayList<Consumer> consumers;
     private double totalCapacity;
+    private final HashMap<String, Integer> stationIndex = new HashMap<>();
+    private final ArrayList<Members> stationMembers = new ArrayList<>();
+    private final Members unserved = new Members();
+    private double[] capacity = new double[INITIAL_CAPACITY];
+    private double[] load = new double[INITIAL_CAPACITY];
+    private boolean[] online = new boolean[INITIAL_CAPACITY];
+    private int[] heap = new int[INITIAL_CAPACITY];
+    private int[] heapPosition = new int[INITIAL_CAPACITY];
+    private int heapSize;
+    private int[] consumerStation = new int[INITIAL_CAPACITY];
+    private int[] consumerSlot = new int[INITIAL_CAPACITY];
+    private long moves;
 
     public SmartGrid(String gridID) {
         this.gridID = gridID;
@@ -17,22 +37,137 @@ public class SmartGrid implements Serializable {
         this.totalCapacity = 0.0;
     }
 
-    public void addPowerStation(PowerStation station) {
+    public synchronized void addPowerStation(PowerStation station) {
+        if (stationIndex.containsKey(station.getResourceID())) {
+            throw new IllegalArgumentException("Power station already on grid " + gridID + ": "
+                    + station.getResourceID());
+        }
+        int s = powerStations.size();
         powerStations.add(station);
-        totalCapacity += station.getEnergyOutput();
+        stationIndex.put(station.getResourceID(), s);
+        stationMembers.add(new Members());
+        if (s == capacity.length) {
+            int grown = s * 2;
+            capacity = Arrays.copyOf(capacity, grown);
+            load = Arrays.copyOf(load, grown);
+            online = Arrays.copyOf(online, grown);
+            heap = Arrays.copyOf(heap, grown);
+            heapPosition = Arrays.copyOf(heapPosition, grown);
+        }
+        capacity[s] = station.getEnergyOutput();
+        load[s] = 0.0;
+        online[s] = false;
+        heapPosition[s] = -1;
+        List<Consumer> connected;
+        synchronized (station) {
+            connected = new ArrayList<>(station.getConnectedConsumers());
+        }
+        for (Consumer consumer : connected) {
+            int c = register(consumer);
+            attach(c, s);
+            load[s] += consumer.getConsumption();
+        }
+        if (station.getStatus().isInService()) {
+            bringOnline(s);
+        } else {
+            shed(s);
+        }
     }
 
-    public void addConsumer(Consumer consumer) {
-        consumers.add(consumer);
-        if (!powerStations.isEmpty()) {
-            powerStations.get(0).addConsumer(consumer);
+    public synchronized void addConsumer(Consumer consumer) {
+        assign(register(consumer));
+    }
+
+    public synchronized void stationChanged(PowerStation station) {
+        Integer s = stationIndex.get(station.getResourceID());
+        if (s == null) {
+            return;
+        }
+        boolean inService = station.getStatus().isInService();
+        double output = station.getEnergyOutput();
+        if (inService && online[s] && output != capacity[s]) {
+            totalCapacity += output - capacity[s];
+            capacity[s] = output;
+            heapUpdate(s);
+            relieve();
+        } else if (!inService && online[s]) {
+            takeOffline(s);
+            shed(s);
+        } else if (inService && !online[s]) {
+            capacity[s] = output;
+            bringOnline(s);
+        } else {
+            capacity[s] = output;
+        }
+    }
+
+    public synchronized List<PowerStation> getOverloadedStations() {
+        List<Integer> overloaded = new ArrayList<>();
+        for (int s = 0; s < powerStations.size(); s++) {
+            if (online[s] && load[s] > capacity[s]) {
+                overloaded.add(s);
+            }
+        }
+        overloaded.sort((a, b) -> Double.compare(load[b] - capacity[b], load[a] - capacity[a]));
+        List<PowerStation> result = new ArrayList<>(overloaded.size());
+        for (int s : overloaded) {
+            result.add(powerStations.get(s));
+        }
+        return result;
+    }
+
+    public synchronized double getLoad(PowerStation station) {
+        Integer s = stationIndex.get(station.getResourceID());
+        return s == null ? 0.0 : load[s];
+    }
+
+    public synchronized double getHeadroom(PowerStation station) {
+        Integer s = stationIndex.get(station.getResourceID());
+        return s == null || !online[s] ? 0.0 : capacity[s] - load[s];
+    }
+
+    public synchronized int getConsumerCount(PowerStation station) {
+        Integer s = stationIndex.get(station.getResourceID());
+        return s == null ? 0 : stationMembers.get(s).size;
+    }
+
+    public synchronized boolean isOnline(PowerStation station) {
+        Integer s = stationIndex.get(station.getResourceID());
+        return s != null && online[s];
+    }
+
+    public synchronized int getUnservedCount() {
+        return unserved.size;
+    }
+
+    public synchronized long getMoves() {
+        return moves;
+    }
+
+    public synchronized String generateLoadReport() {
+        double totalLoad = 0.0;
+        for (int s = 0; s < powerStations.size(); s++) {
+            totalLoad += load[s];
         }
+        StringBuilder report = new StringBuilder(String.format(
+                "Grid %s: %d stations (%d online), %d consumers, %.2f / %.2f MW, %d unserved, %d moves", gridID,
+                powerStations.size(), heapSize, consumers.size(), totalLoad, totalCapacity, unserved.size, moves));
+        for (PowerStation station : getOverloadedStations()) {
+            int s = stationIndex.get(station.getResourceID());
+            report.append(String.format("%n- OVERLOADED %s: %.2f / %.2f MW (%.0f%%)", station.getResourceID(),
+                    load[s], capacity[s], 100.0 * load[s] / Math.max(capacity[s], 1e-9)));
+        }
+        return report.toString();
     }
 
     public double getTotalCapacity() {
         return totalCapacity;
     }
 
+    public String getGridID() {
+        return gridID;
+    }
+
     public ArrayList<PowerStation> getPowerStations() {
         return powerStations;
     }
@@ -40,4 +175,243 @@ public class SmartGrid implements Serializable {
     public ArrayList<Consumer> getConsumers() {
         return consumers;
     }
-}
\ No newline at end of file
+
+    @Override
+    public synchronized void resourceAdded(CityResource resource) {
+        if (resource instanceof PowerStation && !stationIndex.containsKey(resource.getResourceID())) {
+            addPowerStation((PowerStation) resource);
+        }
+    }
+
+    @Override
+    public synchronized void resourceRemoved(String resourceID) {
+        Integer s = stationIndex.remove(resourceID);
+        if (s == null) {
+            return;
+        }
+        if (online[s]) {
+            takeOffline(s);
+        }
+        shed(s);
+        int last = powerStations.size() - 1;
+        if (s != last) {
+            PowerStation moved = powerStations.get(last);
+            powerStations.set(s, moved);
+            stationMembers.set(s, stationMembers.get(last));
+            stationIndex.put(moved.getResourceID(), s);
+            capacity[s] = capacity[last];
+            load[s] = load[last];
+            online[s] = online[last];
+            heapPosition[s] = heapPosition[last];
+            if (heapPosition[s] >= 0) {
+                heap[heapPosition[s]] = s;
+            }
+            Members members = stationMembers.get(s);
+            for (int i = 0; i < members.size; i++) {
+                consumerStation[members.items[i]] = s;
+            }
+        }
+        powerStations.remove(last);
+        stationMembers.remove(last);
+    }
+
+    @Override
+    public void statusChanged(CityResource resource) {
+        if (resource instanceof PowerStation) {
+            stationChanged((PowerStation) resource);
+        }
+    }
+
+    @Override
+    public void resourceMoved(CityResource resource, double oldLatitude, double oldLongitude) {
+    }
+
+    private int register(Consumer consumer) {
+        int c = consumers.size();
+        consumers.add(consumer);
+        if (c == consumerStation.length) {
+            consumerStation = Arrays.copyOf(consumerStation, c * 2);
+            consumerSlot = Arrays.copyOf(consumerSlot, c * 2);
+        }
+        consumerStation[c] = UNSERVED;
+        consumerSlot[c] = -1;
+        return c;
+    }
+
+    private void assign(int c) {
+        Consumer consumer = consumers.get(c);
+        if (heapSize == 0 || headroom(heap[0]) < consumer.getConsumption()) {
+            attach(c, UNSERVED);
+            return;
+        }
+        int s = heap[0];
+        attach(c, s);
+        load[s] += consumer.getConsumption();
+        heapUpdate(s);
+        powerStations.get(s).addConsumer(consumer);
+    }
+
+    private void bringOnline(int s) {
+        online[s] = true;
+        totalCapacity += capacity[s];
+        heapInsert(s);
+        relieve();
+    }
+
+    private void takeOffline(int s) {
+        online[s] = false;
+        totalCapacity -= capacity[s];
+        heapRemove(s);
+    }
+
+    private void shed(int s) {
+        Members members = stationMembers.get(s);
+        if (members.size == 0) {
+            return;
+        }
+        int[] shedding = Arrays.copyOf(members.items, members.size);
+        members.size = 0;
+        load[s] = 0.0;
+        powerStations.get(s).releaseConsumers();
+        for (int c : shedding) {
+            consumerStation[c] = UNSERVED;
+            assign(c);
+            moves++;
+        }
+    }
+
+    private void relieve() {
+        for (int i = unserved.size - 1; i >= 0 && heapSize > 0; i--) {
+            int c = unserved.items[i];
+            if (headroom(heap[0]) >= consumers.get(c).getConsumption()) {
+                detach(c);
+                assign(c);
+            }
+        }
+        for (int s = 0; s < powerStations.size(); s++) {
+            if (!online[s] || load[s] <= capacity[s]) {
+                continue;
+            }
+            Members members = stationMembers.get(s);
+            Set<Consumer> released = new HashSet<>();
+            while (load[s] > capacity[s] && members.size > 0) {
+                int c = members.items[members.size - 1];
+                Consumer consumer = consumers.get(c);
+                int target = heap[0];
+                if (target == s || capacity[target] - load[target] < consumer.getConsumption()) {
+                    break;
+                }
+                detach(c);
+                load[s] -= consumer.getConsumption();
+                heapUpdate(s);
+                released.add(consumer);
+                assign(c);
+                moves++;
+            }
+            if (!released.isEmpty()) {
+                powerStations.get(s).removeConsumers(released);
+            }
+        }
+    }
+
+    private void attach(int c, int s) {
+        Members members = s == UNSERVED ? unserved : stationMembers.get(s);
+        consumerStation[c] = s;
+        consumerSlot[c] = members.add(c);
+    }
+
+    private void detach(int c) {
+        int s = consumerStation[c];
+        Members members = s == UNSERVED ? unserved : stationMembers.get(s);
+        int moved = members.removeAt(consumerSlot[c]);
+        if (moved >= 0) {
+            consumerSlot[moved] = consumerSlot[c];
+        }
+        consumerStation[c] = UNSERVED;
+        consumerSlot[c] = -1;
+    }
+
+    private double headroom(int s) {
+        return capacity[s] - load[s];
+    }
+
+    private void heapInsert(int s) {
+        heap[heapSize] = s;
+        heapPosition[s] = heapSize;
+        siftUp(heapSize++);
+    }
+
+    private void heapRemove(int s) {
+        int position = heapPosition[s];
+        int last = heap[--heapSize];
+        heapPosition[s] = -1;
+        if (position < heapSize) {
+            heap[position] = last;
+            heapPosition[last] = position;
+            siftDown(siftUp(position));
+        }
+    }
+
+    private void heapUpdate(int s) {
+        if (heapPosition[s] >= 0) {
+            siftDown(siftUp(heapPosition[s]));
+        }
+    }
+
+    private int siftUp(int position) {
+        int s = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (headroom(heap[parent]) >= headroom(s)) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPosition[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = s;
+        heapPosition[s] = position;
+        return position;
+    }
+
+    private void siftDown(int position) {
+        int s = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && headroom(heap[child + 1]) > headroom(heap[child])) {
+                child++;
+            }
+            if (headroom(s) >= headroom(heap[child])) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPosition[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = s;
+        heapPosition[s] = position;
+    }
+
+    private static final class Members implements Serializable {
+        private static final long serialVersionUID = 1941305537978736861L;
+        private int[] items = new int[INITIAL_CAPACITY];
+        private int size;
+
+        int add(int c) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size] = c;
+            return size++;
+        }
+
+        int removeAt(int slot) {
+            int last = items[--size];
+            items[slot] = last;
+            return slot == size ? -1 : last;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package smartcity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public final class SpatialGrid<T> {
+    public static final int TARGET_PER_CELL = 16;
+    public static final int MAX_DIMENSION = 1024;
+    private static final int INITIAL_CELL_CAPACITY = 4;
+
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double cellHeight;
+    private final double cellWidth;
+    private final int rows;
+    private final int cols;
+    private final int categories;
+    private final Object[][] items;
+    private final double[][] latitudes;
+    private final double[][] longitudes;
+    private final byte[][] itemCategories;
+    private final int[] counts;
+    private final int[] categoryCounts;
+    private int size;
+
+    public interface Visitor<T> {
+        void visit(T item, double latitude, double longitude, int category);
+    }
+
+    public SpatialGrid(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int rows,
+            int cols, int categories) {
+        if (rows <= 0 || cols <= 0 || categories <= 0 || categories > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid grid " + rows + "x" + cols + " with " + categories
+                    + " categories");
+        }
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.cellHeight = Math.max(maxLatitude - minLatitude, 1e-9) / rows;
+        this.cellWidth = Math.max(maxLongitude - minLongitude, 1e-9) / cols;
+        this.rows = rows;
+        this.cols = cols;
+        this.categories = categories;
+        int cells = rows * cols;
+        this.items = new Object[cells][];
+        this.latitudes = new double[cells][];
+        this.longitudes = new double[cells][];
+        this.itemCategories = new byte[cells][];
+        this.counts = new int[cells];
+        this.categoryCounts = new int[cells * categories];
+    }
+
+    public static int dimensionFor(int expected) {
+        int dimension = (int) Math.ceil(Math.sqrt(Math.max(1, expected) / (double) TARGET_PER_CELL));
+        return Math.max(1, Math.min(MAX_DIMENSION, dimension));
+    }
+
+    public void insert(T item, double latitude, double longitude, int category) {
+        int cell = cellOf(latitude, longitude);
+        int n = counts[cell];
+        if (items[cell] == null) {
+            items[cell] = new Object[INITIAL_CELL_CAPACITY];
+            latitudes[cell] = new double[INITIAL_CELL_CAPACITY];
+            longitudes[cell] = new double[INITIAL_CELL_CAPACITY];
+            itemCategories[cell] = new byte[INITIAL_CELL_CAPACITY];
+        } else if (n == items[cell].length) {
+            int capacity = n * 2;
+            items[cell] = Arrays.copyOf(items[cell], capacity);
+            latitudes[cell] = Arrays.copyOf(latitudes[cell], capacity);
+            longitudes[cell] = Arrays.copyOf(longitudes[cell], capacity);
+            itemCategories[cell] = Arrays.copyOf(itemCategories[cell], capacity);
+        }
+        items[cell][n] = item;
+        latitudes[cell][n] = latitude;
+        longitudes[cell][n] = longitude;
+        itemCategories[cell][n] = (byte) category;
+        counts[cell] = n + 1;
+        categoryCounts[cell * categories + category]++;
+        size++;
+    }
+
+    public boolean remove(T item, double latitude, double longitude) {
+        int cell = cellOf(latitude, longitude);
+        Object[] cellItems = items[cell];
+        int n = counts[cell];
+        for (int i = 0; i < n; i++) {
+            if (item.equals(cellItems[i])) {
+                categoryCounts[cell * categories + itemCategories[cell][i]]--;
+                int last = n - 1;
+                cellItems[i] = cellItems[last];
+                latitudes[cell][i] = latitudes[cell][last];
+                longitudes[cell][i] = longitudes[cell][last];
+                itemCategories[cell][i] = itemCategories[cell][last];
+                cellItems[last] = null;
+                counts[cell] = last;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void query(double minLat, double minLon, double maxLat, double maxLon, Visitor<? super T> visitor) {
+        int fromRow = rowOf(minLat);
+        int toRow = rowOf(maxLat);
+        int fromCol = colOf(minLon);
+        int toCol = colOf(maxLon);
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int col = fromCol; col <= toCol; col++) {
+                int cell = row * cols + col;
+                for (int i = 0; i < counts[cell]; i++) {
+                    double lat = latitudes[cell][i];
+                    double lon = longitudes[cell][i];
+                    if (lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon) {
+                        visitor.visit(item(cell, i), lat, lon, itemCategories[cell][i]);
+                    }
+                }
+            }
+        }
+    }
+
+    public List<T> nearest(double latitude, double longitude, int k) {
+        List<T> result = new ArrayList<>(Math.max(0, k));
+        if (k <= 0 || size == 0) {
+            return result;
+        }
+        PriorityQueue<Candidate<T>> best = new PriorityQueue<>(k, (a, b) -> Double.compare(b.distance, a.distance));
+        int centerRow = rowOf(latitude);
+        int centerCol = colOf(longitude);
+        double ringKm = minCellKm();
+        int maxRing = Math.max(Math.max(centerRow, rows - 1 - centerRow), Math.max(centerCol, cols - 1 - centerCol));
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (best.size() == k && best.peek().distance <= (ring - 1) * ringKm) {
+                break;
+            }
+            for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                if (row < 0 || row >= rows) {
+                    continue;
+                }
+                boolean edge = row == centerRow - ring || row == centerRow + ring;
+                int step = edge ? 1 : 2 * ring;
+                for (int col = centerCol - ring; col <= centerCol + ring; col += Math.max(1, step)) {
+                    if (col >= 0 && col < cols) {
+                        offerCell(row * cols + col, latitude, longitude, k, best);
+                    }
+                }
+            }
+        }
+        while (!best.isEmpty()) {
+            result.add(best.poll().item);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    public List<T> withinRadius(double latitude, double longitude, double radiusKm) {
+        double dLat = radiusKm / CityGeography.KM_PER_DEGREE;
+        double dLon = radiusKm / (CityGeography.KM_PER_DEGREE * Math.max(1e-6, Math.cos(Math.toRadians(latitude))));
+        List<Candidate<T>> found = new ArrayList<>();
+        query(latitude - dLat, longitude - dLon, latitude + dLat, longitude + dLon, (item, lat, lon, category) -> {
+            double distance = CityGeography.distanceKm(latitude, longitude, lat, lon);
+            if (distance <= radiusKm) {
+                found.add(new Candidate<>(item, distance));
+            }
+        });
+        found.sort((a, b) -> Double.compare(a.distance, b.distance));
+        List<T> result = new ArrayList<>(found.size());
+        for (Candidate<T> candidate : found) {
+            result.add(candidate.item);
+        }
+        return result;
+    }
+
+    private void offerCell(int cell, double latitude, double longitude, int k, PriorityQueue<Candidate<T>> best) {
+        for (int i = 0; i < counts[cell]; i++) {
+            double distance = CityGeography.distanceKm(latitude, longitude, latitudes[cell][i], longitudes[cell][i]);
+            if (best.size() < k) {
+                best.add(new Candidate<>(item(cell, i), distance));
+            } else if (distance < best.peek().distance) {
+                best.poll();
+                best.add(new Candidate<>(item(cell, i), distance));
+            }
+        }
+    }
+
+    private double minCellKm() {
+        double maxLatitude = Math.max(Math.abs(minLatitude), Math.abs(minLatitude + rows * cellHeight));
+        double widthKm = cellWidth * CityGeography.KM_PER_DEGREE * Math.cos(Math.toRadians(Math.min(90, maxLatitude)));
+        return Math.min(cellHeight * CityGeography.KM_PER_DEGREE, widthKm);
+    }
+
+    public void forEachInCell(int row, int col, Visitor<? super T> visitor) {
+        int cell = row * cols + col;
+        for (int i = 0; i < counts[cell]; i++) {
+            visitor.visit(item(cell, i), latitudes[cell][i], longitudes[cell][i], itemCategories[cell][i]);
+        }
+    }
+
+    public int cellCount(int row, int col) {
+        return counts[row * cols + col];
+    }
+
+    public int cellCount(int row, int col, int category) {
+        return categoryCounts[(row * cols + col) * categories + category];
+    }
+
+    public int rowOf(double latitude) {
+        return clamp((int) Math.floor((latitude - minLatitude) / cellHeight), rows);
+    }
+
+    public int colOf(double longitude) {
+        return clamp((int) Math.floor((longitude - minLongitude) / cellWidth), cols);
+    }
+
+    public double cellMinLatitude(int row) {
+        return minLatitude + row * cellHeight;
+    }
+
+    public double cellMinLongitude(int col) {
+        return minLongitude + col * cellWidth;
+    }
+
+    public double getCellHeight() {
+        return cellHeight;
+    }
+
+    public double getCellWidth() {
+        return cellWidth;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getCategories() {
+        return categories;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int cell, int i) {
+        return (T) items[cell][i];
+    }
+
+    private int cellOf(double latitude, double longitude) {
+        return rowOf(latitude) * cols + colOf(longitude);
+    }
+
+    private static int clamp(int index, int limit) {
+        return index < 0 ? 0 : index >= limit ? limit - 1 : index;
+    }
+
+    private static final class Candidate<T> {
+        final T item;
+        final double distance;
+
+        Candidate(T item, double distance) {
+            this.item = item;
+            this.distance = distance;
+        }
+    }
+}
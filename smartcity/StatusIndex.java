@@ -0,0 +1,132 @@
+package smartcity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class StatusIndex {
+    private static final ResourceStatus[] STATUSES = ResourceStatus.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final BitSet[] byStatus = new BitSet[STATUSES.length];
+    private final Map<String, BitSet> byGroup = new HashMap<>();
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private String[][] groups = new String[INITIAL_CAPACITY][];
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+    private int[] free = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int next;
+
+    StatusIndex() {
+        for (int i = 0; i < byStatus.length; i++) {
+            byStatus[i] = new BitSet();
+        }
+    }
+
+    static String[] groupsOf(CityResource resource) {
+        String type = resource.getClass().getSimpleName();
+        if (resource instanceof EmergencyService) {
+            return new String[] { type, ((EmergencyService) resource).getServiceType() };
+        }
+        return new String[] { type };
+    }
+
+    public synchronized int count(ResourceStatus status) {
+        return byStatus[status.ordinal()].cardinality();
+    }
+
+    public synchronized int count(String group, ResourceStatus status) {
+        BitSet members = byGroup.get(group);
+        if (members == null) {
+            return 0;
+        }
+        BitSet matches = (BitSet) byStatus[status.ordinal()].clone();
+        matches.and(members);
+        return matches.cardinality();
+    }
+
+    public synchronized List<String> ids(String group, ResourceStatus status) {
+        BitSet members = byGroup.get(group);
+        if (members == null) {
+            return new ArrayList<>();
+        }
+        BitSet matches = (BitSet) byStatus[status.ordinal()].clone();
+        matches.and(members);
+        List<String> result = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            result.add(ids[i]);
+        }
+        return result;
+    }
+
+    public synchronized ResourceStatus statusOf(String resourceID) {
+        Integer ordinal = ordinals.get(resourceID);
+        return ordinal == null ? null : STATUSES[statuses[ordinal]];
+    }
+
+    public synchronized int size() {
+        return ordinals.size();
+    }
+
+    synchronized void add(String resourceID, ResourceStatus status, String... resourceGroups) {
+        remove(resourceID);
+        int ordinal = freeCount > 0 ? free[--freeCount] : next++;
+        if (ordinal == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            groups = Arrays.copyOf(groups, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+        }
+        ordinals.put(resourceID, ordinal);
+        ids[ordinal] = resourceID;
+        groups[ordinal] = resourceGroups;
+        statuses[ordinal] = (byte) status.ordinal();
+        byStatus[status.ordinal()].set(ordinal);
+        for (String group : resourceGroups) {
+            byGroup.computeIfAbsent(group, _ -> new BitSet()).set(ordinal);
+        }
+    }
+
+    synchronized void remove(String resourceID) {
+        Integer ordinal = ordinals.remove(resourceID);
+        if (ordinal == null) {
+            return;
+        }
+        byStatus[statuses[ordinal]].clear(ordinal);
+        for (String group : groups[ordinal]) {
+            byGroup.get(group).clear(ordinal);
+        }
+        ids[ordinal] = null;
+        groups[ordinal] = null;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = ordinal;
+    }
+
+    synchronized void update(String resourceID, ResourceStatus status) {
+        Integer ordinal = ordinals.get(resourceID);
+        if (ordinal == null) {
+            return;
+        }
+        byStatus[statuses[ordinal]].clear(ordinal);
+        statuses[ordinal] = (byte) status.ordinal();
+        byStatus[status.ordinal()].set(ordinal);
+    }
+
+    synchronized void clear() {
+        ordinals.clear();
+        for (BitSet members : byStatus) {
+            members.clear();
+        }
+        byGroup.clear();
+        Arrays.fill(ids, null);
+        Arrays.fill(groups, null);
+        freeCount = 0;
+        next = 0;
+    }
+}
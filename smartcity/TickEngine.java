@@ -0,0 +1,148 @@
+package smartcity;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+public class TickEngine {
+    public static final int CHUNK_SIZE = 2048;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final ForkJoinPool pool;
+    private final long seed;
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private volatile Lock commitLock;
+
+    public TickEngine(long seed) {
+        this(seed, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TickEngine(long seed, int parallelism) {
+        this.seed = seed;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("tick-worker-" + t.getPoolIndex());
+            return t;
+        }, null, false);
+    }
+
+    public interface Rule<S> {
+        Change compute(S resource, SplittableRandom random);
+    }
+
+    public interface Change {
+        void commit();
+    }
+
+    private interface ChunkAction {
+        void run(int chunk);
+    }
+
+    public <S> int tick(List<S> items, Rule<? super S> rule) {
+        long tick = ticks.getAndIncrement();
+        int size = items.size();
+        if (size == 0) {
+            return 0;
+        }
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        SplittableRandom root = new SplittableRandom(seed ^ (tick * GOLDEN_GAMMA));
+        SplittableRandom[] streams = new SplittableRandom[chunks];
+        for (int k = 0; k < chunks; k++) {
+            streams[k] = root.split();
+        }
+        Change[] changes = new Change[size];
+        pool.invoke(new ChunkRange(0, chunks, k -> {
+            SplittableRandom random = streams[k];
+            int to = Math.min(size, (k + 1) * CHUNK_SIZE);
+            for (int i = k * CHUNK_SIZE; i < to; i++) {
+                changes[i] = rule.compute(items.get(i), random);
+            }
+        }));
+        int total = 0;
+        Lock lock = commitLock;
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            for (Change change : changes) {
+                if (change != null) {
+                    change.commit();
+                    total++;
+                }
+            }
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+        processed.addAndGet(size);
+        committed.addAndGet(total);
+        return total;
+    }
+
+    public void setCommitLock(Lock commitLock) {
+        this.commitLock = commitLock;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getTickCount() {
+        return ticks.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getCommittedCount() {
+        return committed.get();
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ChunkRange extends RecursiveAction {
+        private static final long serialVersionUID = 1941305537978736861L;
+        private final int from;
+        private final int to;
+        private final transient ChunkAction action;
+
+        ChunkRange(int from, int to, ChunkAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.run(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkRange(from, mid, action), new ChunkRange(mid, to, action));
+        }
+    }
+}
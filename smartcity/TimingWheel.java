@@ -0,0 +1,302 @@
+package smartcity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class TimingWheel {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    private static final int OVERFLOW = LEVELS;
+    private static final int MAX_BATCH = 4096;
+    private static final long SHARED_TICK_MILLIS = 10;
+    private static final TimingWheel SHARED = new TimingWheel("city-timers", SHARED_TICK_MILLIS,
+            TimeUnit.MILLISECONDS);
+
+    private final String name;
+    private final long tickNanos;
+    private final boolean simulated;
+    private final long startNanos;
+    private final Timeout[][] buckets = new Timeout[LEVELS + 1][WHEEL_SIZE];
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private volatile long lastLagNanos;
+    private volatile long clockNanos;
+    private long currentTick;
+    private int size;
+    private long scheduled;
+    private long cancelled;
+    private Thread worker;
+
+    public TimingWheel(String name, long tickDuration, TimeUnit unit) {
+        this(name, tickDuration, unit, false);
+    }
+
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, boolean simulated) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDuration);
+        }
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.simulated = simulated;
+        this.startNanos = nanoTime();
+    }
+
+    public static TimingWheel shared() {
+        return SHARED;
+    }
+
+    public Timeout schedule(long delay, TimeUnit unit, Runnable task) {
+        long dueNanos = nanoTime() + unit.toNanos(Math.max(0, delay));
+        Timeout timeout;
+        synchronized (this) {
+            if (size == 0) {
+                currentTick = Math.max(currentTick, nowTick());
+            }
+            long deadline = Math.max(currentTick + 1, (dueNanos - startNanos + tickNanos - 1) / tickNanos);
+            timeout = new Timeout(this, deadline, dueNanos, task);
+            place(timeout);
+            size++;
+            scheduled++;
+            if (worker == null && !simulated) {
+                worker = new Thread(this::run, name);
+                worker.setDaemon(true);
+                worker.start();
+            }
+            notifyAll();
+        }
+        return timeout;
+    }
+
+    public void advanceTo(long time, TimeUnit unit) {
+        if (!simulated) {
+            throw new IllegalStateException(name + " runs on the wall clock");
+        }
+        long target = unit.toNanos(time);
+        List<Timeout> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                long targetTick = target / tickNanos;
+                while (due.isEmpty() && currentTick < targetTick) {
+                    if (size == 0) {
+                        currentTick = targetTick;
+                    } else {
+                        advance(due);
+                    }
+                }
+                if (due.isEmpty()) {
+                    clockNanos = Math.max(clockNanos, target);
+                    return;
+                }
+                clockNanos = Math.max(clockNanos, currentTick * tickNanos);
+            }
+            fire(due);
+        }
+    }
+
+    public long nanoTime() {
+        return simulated ? clockNanos : System.nanoTime();
+    }
+
+    public boolean isSimulated() {
+        return simulated;
+    }
+
+    synchronized boolean cancel(Timeout timeout) {
+        if (timeout.level < 0) {
+            return false;
+        }
+        unlink(timeout);
+        timeout.cancelled = true;
+        size--;
+        cancelled++;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getScheduled() {
+        return scheduled;
+    }
+
+    public synchronized long getCancelled() {
+        return cancelled;
+    }
+
+    public long getFired() {
+        return fired.get();
+    }
+
+    public double getAverageLagMillis() {
+        long count = fired.get();
+        return count == 0 ? 0.0 : totalLagNanos.get() / (count * 1_000_000.0);
+    }
+
+    public double getMaxLagMillis() {
+        return maxLagNanos.get() / 1_000_000.0;
+    }
+
+    public double getLastLagMillis() {
+        return lastLagNanos / 1_000_000.0;
+    }
+
+    public long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    private void run() {
+        List<Timeout> due = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (size == 0) {
+                        wait();
+                    }
+                    long target = nowTick();
+                    if (target <= currentTick) {
+                        long wait = startNanos + (currentTick + 1) * tickNanos - nanoTime();
+                        TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, wait));
+                        continue;
+                    }
+                    while (currentTick < target && due.size() < MAX_BATCH) {
+                        advance(due);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            fire(due);
+        }
+    }
+
+    private void fire(List<Timeout> due) {
+        for (Timeout timeout : due) {
+            long lag = Math.max(0, nanoTime() - timeout.dueNanos);
+            fired.incrementAndGet();
+            totalLagNanos.addAndGet(lag);
+            maxLagNanos.accumulateAndGet(lag, Math::max);
+            lastLagNanos = lag;
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                CityEvents.publishFailure(null, "Timer task on " + name, e);
+            }
+        }
+        due.clear();
+    }
+
+    private void advance(List<Timeout> due) {
+        long tick = ++currentTick;
+        if ((tick & levelMask(LEVELS)) == 0) {
+            replace(OVERFLOW, 0);
+        }
+        int highest = 0;
+        while (highest + 1 < LEVELS && (tick & levelMask(highest + 1)) == 0) {
+            highest++;
+        }
+        for (int level = highest; level >= 1; level--) {
+            replace(level, (int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        }
+        int slot = (int) tick & WHEEL_MASK;
+        for (Timeout timeout = buckets[0][slot]; timeout != null; timeout = timeout.next) {
+            timeout.level = -1;
+            due.add(timeout);
+            size--;
+        }
+        buckets[0][slot] = null;
+    }
+
+    private void replace(int level, int slot) {
+        Timeout timeout = buckets[level][slot];
+        buckets[level][slot] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            place(timeout);
+            timeout = next;
+        }
+    }
+
+    private void place(Timeout timeout) {
+        int level = 0;
+        while (level < LEVELS && (timeout.deadline >>> (WHEEL_BITS * (level + 1))) != (currentTick >>> (WHEEL_BITS
+                * (level + 1)))) {
+            level++;
+        }
+        int slot = level == OVERFLOW ? 0 : (int) (timeout.deadline >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+        Timeout head = buckets[level][slot];
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.level = -1;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    private long nowTick() {
+        return (nanoTime() - startNanos) / tickNanos;
+    }
+
+    private static long levelMask(int level) {
+        return (1L << (WHEEL_BITS * level)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d pending, %d scheduled, %d fired, %d cancelled, lag avg %.2f ms, max %.2f ms",
+                name, size(), getScheduled(), getFired(), getCancelled(), getAverageLagMillis(), getMaxLagMillis());
+    }
+
+    public static final class Timeout {
+        private final TimingWheel wheel;
+        private final long deadline;
+        private final long dueNanos;
+        private final Runnable task;
+        private Timeout prev;
+        private Timeout next;
+        private int level;
+        private int slot;
+        private volatile boolean cancelled;
+
+        Timeout(TimingWheel wheel, long deadline, long dueNanos, Runnable task) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.dueNanos = dueNanos;
+            this.task = task;
+        }
+
+        public boolean cancel() {
+            return wheel.cancel(this);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - wheel.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -1,19 +1,22 @@
 package smartcity;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class TransportUnit extends CityResource {
     private static final long serialVersionUID = 1941305537978736861L;
+    static final Set<ResourceStatus> STATUSES = Collections.unmodifiableSet(EnumSet.of(ResourceStatus.ACTIVE,
+            ResourceStatus.EMERGENCY, ResourceStatus.MAINTENANCE, ResourceStatus.OFFLINE));
     private String vehicleType;
     private int passengerCapacity;
     private double fuelConsumptionRate;
-    private int currentPassengers;
+    private volatile int currentPassengers;
 
     public TransportUnit(String resourceID, String location, String status, String vehicleType, int passengerCapacity,
             double fuelConsumptionRate) {
-        super(resourceID, location, status);
+        super(resourceID, location, status, STATUSES);
         this.vehicleType = vehicleType;
         this.passengerCapacity = passengerCapacity;
         this.fuelConsumptionRate = fuelConsumptionRate;
@@ -21,14 +24,20 @@ public class TransportUnit extends CityResource {
     }
 
     @Override
-    public double calculateMaintenanceCost() {
+    public Set<ResourceStatus> getSupportedStatuses() {
+        return STATUSES;
+    }
+
+    @Override
+    protected double computeMaintenanceCost() {
+        return maintenanceCost(vehicleType, passengerCapacity, fuelConsumptionRate);
+    }
+
+    static double maintenanceCost(String vehicleType, int passengerCapacity, double fuelConsumptionRate) {
         double baseCost = vehicleType.equals("Bus") ? 500.0 : 800.0;
         double fuelCost = fuelConsumptionRate * 3.5;
         double usageCost = passengerCapacity * 0.5;
-        double maintenanceCost = baseCost + fuelCost + usageCost;
-        totalMaintenanceCost += maintenanceCost;
-        totalPassengers += currentPassengers;
-        return maintenanceCost;
+        return baseCost + fuelCost + usageCost;
     }
 
     @Override
@@ -50,17 +59,29 @@ public class TransportUnit extends CityResource {
     }
 
     public void setCurrentPassengers(int currentPassengers) {
+        synchronized (this) {
+            int previous = this.currentPassengers;
+            restoreCurrentPassengers(currentPassengers);
+            CityMetrics m = metrics;
+            if (m != null) {
+                m.passengersChanged(this, this.currentPassengers - previous);
+            }
+        }
+        markDirty();
+    }
+
+    void restoreCurrentPassengers(int currentPassengers) {
         this.currentPassengers = Math.min(currentPassengers, passengerCapacity);
     }
 
     public void adjustRouteBasedOnTraffic(int change) {
         int newPassengers = Math.max(0, Math.min(passengerCapacity, currentPassengers + change));
         setCurrentPassengers(newPassengers);
-        String statusUpdate = (change > 0) ? "Increased traffic" : (change < 0) ? "Reduced traffic" : "Stable traffic";
-        if (SmartCityGUI.getReportArea() != null) {
-            SmartCityGUI.getReportArea()
-                    .append("TRAFFIC UPDATE: " + resourceID + " - " + statusUpdate + ", Passengers: " + newPassengers +
-                            " at " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss")) + "\n");
+        if (CityEvents.hasSubscribers()) {
+            String statusUpdate = (change > 0) ? "Increased traffic"
+                    : (change < 0) ? "Reduced traffic" : "Stable traffic";
+            CityEvents.publish(CityEvent.Type.TRAFFIC, resourceID,
+                    "TRAFFIC UPDATE: " + resourceID + " - " + statusUpdate + ", Passengers: " + newPassengers);
         }
     }
 
@@ -76,6 +97,17 @@ public class TransportUnit extends CityResource {
         return passengerCapacity;
     }
 
+    public void setPassengerCapacity(int passengerCapacity) {
+        synchronized (this) {
+            this.passengerCapacity = passengerCapacity;
+            maintenanceInputsChanged();
+        }
+        if (currentPassengers > passengerCapacity) {
+            setCurrentPassengers(passengerCapacity);
+        }
+        markDirty();
+    }
+
     public double getFuelConsumptionRate() {
         return fuelConsumptionRate;
     }